@@ -1,3 +1,16 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Classe que implmenta um árvore de pesquisa binária AVL.
  *
@@ -6,15 +19,60 @@
 
 public class ArvoreAVL {
     /**
-     * Classe que implementa o nodo da árvore.
+     * Políticas para a inserção de um elemento que já está na árvore.
+     * ALLOW: insere um novo nodo repetido (comportamento original).
+     * REJECT: ignora a inserção.
+     * OVERWRITE: substitui o elemento armazenado no nodo existente. Como o elemento é um Integer,
+     * o novo é igual ao antigo e a árvore fica como na política REJECT; só muda qual objeto
+     * Integer fica guardado no nodo.
+     * MULTISET: incrementa o contador de ocorrências do nodo existente.
+     */
+    public enum DuplicatePolicy { ALLOW, REJECT, OVERWRITE, MULTISET }
+
+    /**
+     * Políticas de balanceamento da inserção.
+     * STRICT: AVL, rotaciona no caminho da inserção sempre que um nodo fica com |balance| = 2.
+     * RELAXED: balanceamento adiado. A inserção só atualiza as alturas, sem rotações; os nodos
+     * desbalanceados ficam registrados e o balanceamento AVL é feito por rebalance(), no fim da
+     * rajada ou por uma tarefa de manutenção. Até lá a árvore troca um pouco de profundidade
+     * por menos trabalho: só quando um nodo inserido fica mais fundo que log(n) na base 1/0.8
+     * (cerca de 3.1 * log2(n)) a subárvore do ancestral bode expiatório é reconstruída, como
+     * na WEIGHT_BALANCED com um limite mais folgado. Assim a altura fica limitada mesmo numa
+     * rajada em ordem crescente, com custo amortizado O(log(n)) por inserção.
+     * WEIGHT_BALANCED: não rotaciona; árvore bode expiatório com alfa = 0.7. Garante só a
+     * altura até log(n) na base 1/alfa + 1 (alfa-balanceada em altura): quando um nodo inserido
+     * passa dessa profundidade, a subárvore do primeiro ancestral em que um filho tem mais que
+     * alfa do tamanho dele é reconstruída. Os nodos fora desse caminho não são verificados.
+     */
+    public enum BalancePolicy { STRICT, RELAXED, WEIGHT_BALANCED }
+
+    private static final double ALFA_PESO = 0.7;
+    private static final double ALFA_RELAXADO = 0.8; //limite de profundidade da política RELAXED
+
+    // Estimativas de memória para uma JVM de 64 bits com referências comprimidas
+    private static final long BYTES_NODE = 48; //cabeçalho 12 + 5 referências + 4 int, alinhado em 8
+    private static final long BYTES_NODO_DESPEJADO = 64; //Node + long + 3 int
+    private static final long BYTES_INTEGER = 16; //Integer fora da faixa -128..127 (cache do Integer.valueOf)
+    private static final long BYTES_ARVORE = 160; //objeto ArvoreAVL: cabeçalho 12 + 5 int + 1 boolean + 7 referências + 12 long, alinhado em 8
+    private static final int MINIMO_PAGINA = 64; //menor subárvore despejada de uma vez, em nodos
+    private static final long MINIMO_COMPACTACAO = 1 << 20; //tamanho do arquivo de despejo a partir do qual ele é compactado
+    private static final int FATOR_LOTE = 4; //addAllSorted reconstrói a árvore quando o lote tem pelo menos count / FATOR_LOTE elementos
+
+    /**
+     * Classe que implementa o nodo da árvore. Visível no pacote para que ArvoreIntervalos e
+     * ArvoreAgregada estendam o nodo com o valor que mantêm para cada subárvore.
     */
-    private static final class Node {
+    static class Node {
 
         public Node father;
         public Node left;
         public Node right;
         public Integer element;
         private int balance;
+        private int altura; //altura da subárvore, uma folha tem altura 0
+        private int occurrences; //ocorrências do elemento, usado na política MULTISET
+        private int acesso; //relógio da última descida que passou pelo nodo, só mantido com orçamento de memória
+        private NodoDespejado origem; //página de onde a subárvore foi lida, enquanto ela não for alterada
        
         /**
          * Método construtor da classe Node.
@@ -26,21 +84,80 @@ public class ArvoreAVL {
             left = null;
             right = null;
             balance = 0;
+            altura = 0;
+            occurrences = 1;
             this.element = element;
         }
     }
 
+    /**
+     * Classe que ocupa o lugar de uma subárvore despejada para o arquivo de despejo.
+     * Guarda a altura e o balanceamento da subárvore, então as rotações e o cálculo de
+     * balanceamento funcionam sem trazê-la de volta. Quando a subárvore é lida, o NodoDespejado
+     * fica no campo origem da raiz dela: enquanto nenhum nodo da subárvore for alterado, a página
+     * continua sendo uma cópia válida e um novo despejo só religa o NodoDespejado, sem gravar.
+     */
+    private static final class NodoDespejado extends Node {
+
+        private final long pagina; //posição da subárvore no arquivo
+        private final int bytes; //tamanho da subárvore no arquivo
+        private final int nodos; //nodos da subárvore, incluindo os de NodoDespejado internos
+        private final int nodosPagina; //nodos gravados nesta página
+
+        public NodoDespejado(long pagina, int bytes, int nodos, int nodosPagina) {
+            super(null);
+            this.pagina = pagina;
+            this.bytes = bytes;
+            this.nodos = nodos;
+            this.nodosPagina = nodosPagina;
+        }
+    }
+
     // Atributos da árvore
     private int count; //contagem do número de nodos
+    private int total; //contagem do número de elementos, incluindo as ocorrências repetidas
+    private DuplicatePolicy policy; //política para elementos repetidos
     private Node root; //referência para o nodo raiz
+    private CacheDeBusca cache; //cache opcional de resultados de contains, null se desligada
+    private BalancePolicy balancePolicy; //política de balanceamento da inserção
+    private Node inserido; //nodo criado pela inserção em andamento
+    private int profundidadeInserido; //profundidade do nodo criado pela inserção em andamento
+    private boolean rebalancePendente; //política RELAXED: algum nodo ficou com |balance| > 1 desde o último rebalance()
+    private long insercoes; //inserções que criaram um nodo
+    private long rotacoes; //rotações simples feitas
+    private long reconstrucoes; //subárvores reconstruídas
+    private long nodosReconstruidos; //nodos religados nas reconstruções
+    private FileChannel despejo; //arquivo de despejo, null se não houver orçamento de memória
+    private Path arquivoDespejo; //caminho do arquivo de despejo
+    private long fimDespejo; //próxima posição livre do arquivo de despejo
+    private long bytesVivos; //bytes do arquivo de despejo ainda referenciados pela árvore
+    private long orcamento; //orçamento para memoryFootprint(), em bytes
+    private int residentes; //nodos em memória (count menos os despejados)
+    private long bytesNodos; //estimativa da memória dos nodos em memória, incluindo os NodoDespejado
+    private int relogio; //incrementado a cada add e contains, para achar as subárvores frias
+    private long despejos; //subárvores gravadas no arquivo
+    private long reaproveitamentos; //subárvores despejadas sem gravar, reaproveitando a página de onde foram lidas
+    private long bytesGravados; //bytes gravados no arquivo de despejo, sem contar a compactação
+    private long faltas; //subárvores lidas de volta do arquivo
 
     /**
      * Método construtor da classe ArvoreAVL.
      * Cria uma árvore com count = 0 e root = null.
      */
     public ArvoreAVL() {
+        this(DuplicatePolicy.ALLOW);
+    }
+
+    /**
+     * Método construtor da classe ArvoreAVL com uma política para elementos repetidos.
+     * @param policy Política para elementos repetidos.
+     */
+    public ArvoreAVL(DuplicatePolicy policy) {
         count = 0;
+        total = 0;
         root = null;
+        balancePolicy = BalancePolicy.STRICT;
+        setDuplicatePolicy(policy);
     }
 
     /**
@@ -48,7 +165,69 @@ public class ArvoreAVL {
      */
     public void clear() {
         count = 0;
+        total = 0;
         root = null;
+        residentes = 0;
+        bytesNodos = 0;
+        rebalancePendente = false;
+        if (despejo != null) {
+            try {
+                despejo.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            fimDespejo = 0;
+            bytesVivos = 0;
+        }
+        if (cache != null) {
+            cache.invalidaTudo();
+        }
+    }
+
+    /**
+     * Método que retorna a política para elementos repetidos.
+     * @return Política atual.
+     */
+    public DuplicatePolicy getDuplicatePolicy() {
+        return policy;
+    }
+
+    /**
+     * Método que troca a política para elementos repetidos. Só é permitido com a árvore vazia.
+     * @param policy Nova política.
+     */
+    public void setDuplicatePolicy(DuplicatePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Politica nula");
+        }
+        if (!isEmpty()) {
+            throw new IllegalStateException("A politica so pode ser trocada com a arvore vazia");
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Método que liga uma cache de tamanho fixo na frente de contains.
+     * Útil quando poucas chaves concentram a maior parte das buscas.
+     * @param capacidade Número de posições da cache.
+     */
+    public void enableLookupCache(int capacidade) {
+        cache = new CacheDeBusca(capacidade);
+    }
+
+    /**
+     * Método que desliga a cache de contains.
+     */
+    public void disableLookupCache() {
+        cache = null;
+    }
+
+    /**
+     * Método que retorna a cache de contains, para consulta das métricas de acerto.
+     * @return Cache, ou null se estiver desligada.
+     */
+    public CacheDeBusca getLookupCache() {
+        return cache;
     }
 
     /**
@@ -60,11 +239,185 @@ public class ArvoreAVL {
     }
 
     /**
-     * Método que retorna a quantidade de nodos na árvore.
-     * @return Integer count.
+     * Método que retorna a quantidade de elementos na árvore, contando as repetições.
+     * @return Integer total.
      */
     public int size() {
-        return count;
+        return total;
+    }
+
+    /**
+     * Método que retorna a quantidade de elementos distintos na árvore.
+     * Nas políticas REJECT, OVERWRITE e MULTISET é O(1); na política ALLOW percorre a árvore, O(n).
+     * @return Quantidade de elementos distintos.
+     */
+    public int distinctSize() {
+        if (policy != DuplicatePolicy.ALLOW) {
+            return count;
+        }
+        int[] ordenados = new int[count];
+        exportaNodos(ordenados, null);
+        int distintos = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || ordenados[i] != ordenados[i - 1]) {
+                distintos++;
+            }
+        }
+        return distintos;
+    }
+
+    /**
+     * Método que retorna quantas vezes um elemento está na árvore. Notação O: O(log(n)).
+     * @param element Elemento a ser contado.
+     * @return Número de ocorrências do elemento.
+     */
+    public int count(Integer element) {
+        int res;
+        if (policy == DuplicatePolicy.ALLOW) {
+            res = countAux(element, root);
+        } else {
+            Node n = searchNodeRef(element, root);
+            res = (n == null) ? 0 : n.occurrences;
+        }
+        ajustaMemoria();
+        return res;
+    }
+
+    /**
+     * Método que conta os nodos com o elemento na política ALLOW, em que os repetidos
+     * podem estar nas duas subárvores do primeiro nodo encontrado. Usa uma pilha explícita
+     * do tamanho da altura. Notação O: O(log(n) + k) para k repetidos.
+     * @param element Elemento a ser contado.
+     * @param n Nodo raiz da subárvore.
+     * @return Número de nodos com o elemento.
+     */
+    private int countAux(Integer element, Node n) {
+        if (element == null || n == null)
+            return 0;
+        Node[] pilha = new Node[altura(n) + 2];
+        int topo = 0;
+        int res = 0;
+        pilha[topo++] = n;
+        while (topo > 0) {
+            n = carrega(pilha[--topo]);
+            int c = n.element.compareTo(element);
+            if (c == 0)
+                res++;
+            if (c >= 0 && n.left != null)
+                pilha[topo++] = n.left;
+            if (c <= 0 && n.right != null)
+                pilha[topo++] = n.right;
+        }
+        return res;
+    }
+
+    /**
+     * Método que verifica as invariantes da árvore: ordem dos elementos, ligações com o pai,
+     * altura e balanceamento guardados em cada nodo, |balance| <= 1 na política STRICT (e na
+     * RELAXED sem balanceamento pendente), altura até log(n) na base 1/alfa + 1 nas políticas
+     * WEIGHT_BALANCED e RELAXED, ausência de repetidos fora da política ALLOW e os contadores count e total.
+     * Com orçamento de memória também confere as subárvores despejadas (lidas para uma cópia
+     * solta, sem religá-las à árvore), as páginas limpas contra os nodos em memória e os
+     * contadores de nodos e bytes em memória e de bytes vivos do arquivo. Não altera a árvore.
+     * Notação O: O(n).
+     * @throws IllegalStateException Se alguma invariante for violada.
+     */
+    public void validate() {
+        if (root != null && root.father != null) {
+            throw new IllegalStateException("A raiz tem pai");
+        }
+        long[] contadores = new long[5]; //nodos, ocorrências, nodos em memória, bytes em memória, bytes das páginas
+        validateAux(root, null, null, contadores, true);
+        if (contadores[2] != residentes || contadores[3] != bytesNodos) {
+            throw new IllegalStateException("residentes = " + residentes + " e " + bytesNodos + " bytes, mas a arvore tem "
+                    + contadores[2] + " nodos e " + contadores[3] + " bytes em memoria");
+        }
+        if (despejo != null && contadores[4] != bytesVivos) {
+            throw new IllegalStateException("bytesVivos = " + bytesVivos + ", mas a arvore referencia " + contadores[4] + " bytes do arquivo");
+        }
+        if (contadores[0] != count) {
+            throw new IllegalStateException("count = " + count + ", mas a arvore tem " + contadores[0] + " nodos");
+        }
+        if (contadores[1] != total) {
+            throw new IllegalStateException("total = " + total + ", mas a arvore tem " + contadores[1] + " elementos");
+        }
+        if (balancePolicy != BalancePolicy.STRICT && count > 0) {
+            double alfa = (balancePolicy == BalancePolicy.RELAXED) ? ALFA_RELAXADO : ALFA_PESO;
+            int limite = (int) Math.floor(Math.log(count) / Math.log(1 / alfa)) + 1;
+            if (height() > limite) {
+                throw new IllegalStateException("Altura " + height() + " acima do limite " + limite + " para " + count + " nodos");
+            }
+        }
+    }
+
+    /**
+     * Método que verifica as invariantes de uma subárvore.
+     * @param n Nodo raiz da subárvore.
+     * @param lo Menor valor permitido na subárvore, ou null.
+     * @param hi Maior valor permitido na subárvore, ou null.
+     * @param contadores Acumula os nodos, as ocorrências, os nodos e bytes em memória e os bytes das páginas referenciadas.
+     * @param emMemoria Se false, n faz parte de uma cópia solta de uma página despejada.
+     * @return Altura da subárvore.
+     */
+    private int validateAux(Node n, Integer lo, Integer hi, long[] contadores, boolean emMemoria) {
+        if (n == null)
+            return -1;
+        if (n instanceof NodoDespejado) {
+            NodoDespejado d = (NodoDespejado) n;
+            Node sub = le(lePagina(d.pagina, d.bytes), d.father, new long[1]);
+            long antes = contadores[0];
+            int h = validateAux(sub, lo, hi, contadores, false);
+            if (h != n.altura || sub.balance != n.balance || contadores[0] - antes != d.nodos) {
+                throw new IllegalStateException("Pagina " + d.pagina + " diverge do NodoDespejado que a referencia");
+            }
+            if (emMemoria) {
+                contadores[3] += BYTES_NODO_DESPEJADO;
+            }
+            contadores[4] += d.bytes;
+            return h;
+        }
+        boolean repetidos = (policy == DuplicatePolicy.ALLOW);
+        if (lo != null && (repetidos ? n.element < lo : n.element <= lo)) {
+            throw new IllegalStateException("Nodo " + n.element + " fora de ordem: deveria ser maior que " + lo);
+        }
+        if (hi != null && (repetidos ? n.element > hi : n.element >= hi)) {
+            throw new IllegalStateException("Nodo " + n.element + " fora de ordem: deveria ser menor que " + hi);
+        }
+        if (n.left != null && n.left.father != n || n.right != null && n.right.father != n) {
+            throw new IllegalStateException("Filho do nodo " + n.element + " aponta para outro pai");
+        }
+        if (n.occurrences < 1 || (policy != DuplicatePolicy.MULTISET && n.occurrences != 1)) {
+            throw new IllegalStateException("Nodo " + n.element + " com " + n.occurrences + " ocorrencias");
+        }
+        int hLeft = validateAux(n.left, lo, n.element, contadores, emMemoria);
+        int hRight = validateAux(n.right, n.element, hi, contadores, emMemoria);
+        if (n.altura != 1 + Math.max(hLeft, hRight) || n.balance != hRight - hLeft) {
+            throw new IllegalStateException("Altura ou balance desatualizados no nodo " + n.element);
+        }
+        boolean avl = balancePolicy == BalancePolicy.STRICT || (balancePolicy == BalancePolicy.RELAXED && !rebalancePendente);
+        if (avl && (n.balance > 1 || n.balance < -1)) {
+            throw new IllegalStateException("Nodo " + n.element + " desbalanceado: " + n.balance);
+        }
+        if (emMemoria && n.origem != null) {
+            // a página de origem só pode ser reaproveitada se ainda for igual à subárvore em memória
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                escreveNodo(n, new DataOutputStream(bytes), new long[4]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!ByteBuffer.wrap(bytes.toByteArray()).equals(lePagina(n.origem.pagina, n.origem.bytes))) {
+                throw new IllegalStateException("Nodo " + n.element + " alterado sem descartar a pagina de origem");
+            }
+            contadores[4] += n.origem.bytes;
+        }
+        contadores[0]++;
+        contadores[1] += n.occurrences;
+        if (emMemoria) {
+            contadores[2]++;
+            contadores[3] += bytesNodo(n.element);
+        }
+        return n.altura;
     }
 
     /**
@@ -78,6 +431,14 @@ public class ArvoreAVL {
         return root;
     }
 
+    /**
+     * Método que retorna a raiz da árvore, ou null se estiver vazia.
+     * @return Nodo raiz.
+     */
+    Node raiz() {
+        return root;
+    }
+
     /**
      * Método que retorna o nodo pai de um determinado nodo.
      * @param n Nodo filho.
@@ -94,8 +455,20 @@ public class ArvoreAVL {
      * @return Boolean "true" se o elemento está na árvore, caso contrário "false".
      */
     public boolean contains(Integer element) {
-        Node n = searchNodeRef(element, root);
-        return(n!=null);
+        relogio++;
+        if (cache == null || element == null) {
+            Node n = searchNodeRef(element, root);
+            ajustaMemoria();
+            return(n!=null);
+        }
+        int r = cache.consulta(element);
+        if (r >= 0) {
+            return (r == 1);
+        }
+        boolean presente = (searchNodeRef(element, root) != null);
+        cache.registra(element, presente);
+        ajustaMemoria();
+        return presente;
     }
 
     /**
@@ -105,17 +478,18 @@ public class ArvoreAVL {
      * @return Nodo com o elemento.
      */
     private Node searchNodeRef(Integer element, Node n) {
-        if (element == null || n == null)
+        if (element == null)
             return null;
-        int c = n.element.compareTo(element);
-        if (c==0)
-            return n;
-        if (c > 0) {
-            return searchNodeRef(element, n.left);
-        }
-        else {
-            return searchNodeRef(element, n.right);
+        while (n != null) {
+            n = carrega(n);
+            if (despejo != null)
+                n.acesso = relogio;
+            int c = n.element.compareTo(element);
+            if (c==0)
+                return n;
+            n = (c > 0) ? n.left : n.right;
         }
+        return null;
     }
 
     /**
@@ -123,35 +497,149 @@ public class ArvoreAVL {
      * @param element Elemento a ser adicionado.
      */
     public void add(Integer element) {
-        root = add(root, element, null);
+        if (cache != null) {
+            cache.invalida(element);
+        }
+        relogio++;
+        if (!insere(element)) {
+            ajustaMemoria();
+            return;
+        }
         count++;
-        calculaBalance(root);
-        verificaBalance(root);
+        total++;
+        residentes++;
+        bytesNodos += bytesNodo(element);
+        insercoes++;
+        if (balancePolicy == BalancePolicy.WEIGHT_BALANCED) {
+            verificaProfundidade(ALFA_PESO);
+        } else if (balancePolicy == BalancePolicy.RELAXED) {
+            verificaProfundidade(ALFA_RELAXADO);
+        }
+        inserido = null;
+        ajustaMemoria();
     }
     /**
-     * Método que faz a inserção de um novo elemento na árvore de modo recursivo.
-     * Se nodo n = null chegamos no final da árvore, logo father recebe e como filho.
-     * Notação O: O(log(n)).
-     * @param n Nodo utilizado para verificar se já chegamos no fim da árvore.
-     * @param e Elemento a ser adicionado.
-     * @param father Nodo pai do nodo n.
-     * @return
+     * Método que faz a inserção de um novo elemento na árvore: desce da raiz até a posição do
+     * elemento e, na subida pelos pais, atualiza a altura de cada nodo do caminho e, na política
+     * STRICT, aplica a rotação necessária. Fora da política ALLOW, se a descida encontra o
+     * elemento, aplica a política ao nodo existente e para ali, então uma chave nova custa uma
+     * única descida. Notação O: O(log(n)).
+     * @param element Elemento a ser adicionado.
+     * @return Boolean "true" se um nodo foi criado, "false" se o elemento já estava na árvore.
      */
-    private Node add(Node n, Integer element, Node father) { //Notação O: O(log(n)).
-        if (n == null) { // insere
-            Node aux = new Node(element);
-            aux.father = father;
-            return aux;
+    private boolean insere(Integer element) { //Notação O: O(log(n)).
+        Node father = null;
+        Node n = root;
+        boolean direita = false;
+        int profundidade = 0;
+        while (n != null) {
+            n = carrega(n);
+            if (despejo != null)
+                n.acesso = relogio;
+            int c = n.element.compareTo(element);
+            if (c == 0 && policy != DuplicatePolicy.ALLOW) {
+                if (policy == DuplicatePolicy.OVERWRITE) {
+                    n.element = element; // mesmo valor: a página de origem continua válida
+                } else if (policy == DuplicatePolicy.MULTISET) {
+                    n.occurrences++;
+                    total++;
+                    alterado(n);
+                }
+                return false;
+            }
+            father = n;
+            direita = c < 0; // senao, insere na subarvore da esq ou da dir
+            n = direita ? n.right : n.left;
+            profundidade++;
         }
-       
-        // Senao, insere na subarvore da esq ou da dir
-        if (n.element.compareTo(element) < 0) {
-            n.right = add(n.right, element, n); // dir
+        Node aux = criaNodo(element);
+        aux.father = father;
+        if (despejo != null)
+            aux.acesso = relogio;
+        inserido = aux;
+        profundidadeInserido = profundidade;
+        if (father == null) {
+            root = aux;
+            return true;
         }
-        else {
-            n.left = add(n.left, element, n); // esq
+        if (direita) {
+            father.right = aux;
+        } else {
+            father.left = aux;
+        }
+        for (Node a = father; a != null; ) {
+            Node pai = a.father;
+            descartaOrigem(a);
+            if (balancePolicy == BalancePolicy.STRICT) {
+                Node novo = verificaBalance(a); // a rotação já atualiza root e o pai do novo nodo
+                if (novo != a && pai != null) {
+                    if (pai.left == a) {
+                        pai.left = novo;
+                    } else {
+                        pai.right = novo;
+                    }
+                }
+            } else {
+                calculaBalance(a);
+                if (balancePolicy == BalancePolicy.RELAXED && (a.balance > 1 || a.balance < -1)) {
+                    rebalancePendente = true;
+                }
+            }
+            a = pai;
+        }
+        return true;
+    }
+
+    /**
+     * Método que adiciona um lote de elementos em ordem crescente, aplicando a política para
+     * repetidos como add(). Quando o lote tem pelo menos count / 4 elementos, intercala os nodos
+     * atuais com os novos e reconstrói a árvore perfeitamente balanceada reaproveitando os nodos,
+     * em O(n + m) em vez de m inserções de O(log(n)). Usado por PipelineIngestao.
+     * @param ordenados Elementos em ordem crescente (repetidos permitidos).
+     * @param m Número de elementos do vetor a adicionar.
+     */
+    void addAllSorted(int[] ordenados, int m) {
+        // com despejo a intercalação traria a árvore inteira para a memória
+        if ((long) m * FATOR_LOTE < count || despejo != null) {
+            for (int i = 0; i < m; i++) {
+                add(ordenados[i]);
+            }
+            return;
+        }
+        Node[] atuais = new Node[count];
+        achata(root, atuais, 0);
+        Node[] nodos = new Node[count + m];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < atuais.length || j < m) {
+            if (j == m || (i < atuais.length && atuais[i].element <= ordenados[j])) {
+                nodos[k++] = atuais[i++];
+                continue;
+            }
+            int e = ordenados[j++];
+            if (policy != DuplicatePolicy.ALLOW && k > 0 && nodos[k - 1].element == e) {
+                if (policy == DuplicatePolicy.MULTISET) {
+                    nodos[k - 1].occurrences++;
+                    total++;
+                }
+                continue; // REJECT e OVERWRITE: o elemento já está na árvore
+            }
+            nodos[k++] = criaNodo(e);
+            count++;
+            total++;
+            residentes++;
+            bytesNodos += bytesNodo(e);
+            insercoes++;
+        }
+        // reaproveita os nodos existentes, como nas reconstruções da política WEIGHT_BALANCED e de rebalance()
+        root = monta(nodos, 0, k - 1, null);
+        rebalancePendente = false;
+        reconstrucoes++;
+        nodosReconstruidos += k;
+        if (cache != null) {
+            cache.invalidaTudo();
         }
-        return n;
     }
 
     /**
@@ -160,11 +648,30 @@ public class ArvoreAVL {
      */
     public Integer getSmallest() {
         Node n = smallest(root);
+        ajustaMemoria();
+        if (n==null)
+            return null;
+        else
+            return n.element;
+    }
+    /**
+     * Retorna o maior elemento da arvore.
+     * @return o maior elemento
+     */
+    public Integer getLargest() {
+        Node n = root;
+        if (n != null) {
+            while (n.right != null) {
+                n = carrega(n.right);
+            }
+        }
+        ajustaMemoria();
         if (n==null)
             return null;
         else
             return n.element;
     }
+
     /**
      * Busca o menor elemento da árvore.
      * @param n Nodo raiz.
@@ -174,160 +681,933 @@ public class ArvoreAVL {
         if (n == null)
             return null;
         while (n.left != null) {
-            n = n.left;
+            n = carrega(n.left);
         }
         return n;
     }
 
     /**
-     * Método que retorna a altura da árvore. Notação O: O(n).
+     * Método que retorna a altura da árvore. Notação O: O(1).
+     * @return Altura da árvore (-1 se estiver vazia).
+     */
+    public int height() {
+        return altura(root);
+    }
+
+    /**
+     * Método que retorna a altura de uma subárvore. Notação O: O(1).
      * @param n Nodo raiz.
      * @return Altura da árvore.
      */
-    public int height(Node n){ //Notação O: O(n).
-        if(n.left == null && n.right == null){
-            return 0;
-        }else if(n.left != null && n.right == null){
-            return 1 + height(n.left);
-        }else if(n.left == null && n.right != null){
-            return 1 + height(n.right);
-        }else{
-            return 1 + Math.max(height(n.left), height(n.right));
-        }
+    public int height(Node n){ //Notação O: O(1).
+        return n.altura;
+    }
+
+    /**
+     * Altura de uma subárvore, -1 se for vazia.
+     */
+    private static int altura(Node n) {
+        return (n == null) ? -1 : n.altura;
     }
 
     /**
-     * Método que calcula o balancemento dos nodos e atualiza o atributo balance deles.
+     * Método que recalcula a altura e o balanceamento de um nodo a partir dos filhos. Notação O: O(1).
      * @param n nodo a ser calculado o balancemaneto.
      */
     public void calculaBalance(Node n){
-        if(n.left == null && n.right == null){
-            n.balance = 0;
-        }else if(n.left == null && n.right != null){
-            n.balance += height(n.right);
-        }else if(n.left != null && n.right == null){
-            n.balance += 0 - height(n.left);
-        }else{
-            n.balance = height(n.right) - height(n.left);
-        }
-        if(n.left != null){
-            calculaBalance(n.left);
-        }
-        if(n.right != null){
-            calculaBalance(n.right);
-        }
+        int hLeft = altura(n.left);
+        int hRight = altura(n.right);
+        n.altura = 1 + Math.max(hLeft, hRight);
+        n.balance = hRight - hLeft;
+        atualizaNodo(n);
     }
 
     /**
-     * Método que verifica se a árvore está balanceada.
-     * @param n Nodo raiz.
-     * @return Nodo balanceado.
+     * Método que cria o nodo de uma nova inserção. Subclasses que guardam mais dados no nodo
+     * devolvem a sua própria subclasse de Node.
+     * @param element Elemento a ser armazenado no nodo.
+     * @return Novo nodo.
+     */
+    Node criaNodo(Integer element) {
+        return new Node(element);
+    }
+
+    /**
+     * Método chamado sempre que a altura de um nodo é recalculada a partir dos filhos: no
+     * caminho da inserção, nas rotações e nas reconstruções. Subclasses o usam para manter
+     * um valor da subárvore (o maior fim em ArvoreIntervalos, o agregado em ArvoreAgregada)
+     * pelos mesmos caminhos que mantêm a altura. Em ArvoreAVL não faz nada.
+     * @param n Nodo cujos filhos já estão atualizados.
+     */
+    void atualizaNodo(Node n) {
+    }
+
+    /**
+     * Método que verifica se um nodo está balanceado e, se não estiver, aplica a rotação necessária.
+     * Supõe que as subárvores de n já estão balanceadas. Notação O: O(1).
+     * @param n Nodo a ser verificado.
+     * @return Nova raiz da subárvore de n.
      */
     public Node verificaBalance(Node n){
-        if(n.right != null){
-            n.right= verificaBalance(n.right);
-            calculaBalance(n);
-        }
-        if(n.left != null){
-            n.left= verificaBalance(n.left);
-            calculaBalance(n);
-        }
-        if(n.balance >= 2 || n.balance <= -2){
-            if(n.balance >= 2){
-                if(n.right.right != null){
-                    return rotacaoSimplesDireita(n);
-                }else{
-                    return rotacaoDuplaDireita(n);
-                }
+        calculaBalance(n);
+        if(n.balance >= 2){
+            if(n.right.balance >= 0){
+                return rotacaoSimplesDireita(n);
             }else{
-                if(n.left.left !=null){
-                    return rotacaoSimplesEsquerda(n);
-                }else{
-                    return rotacaoDuplaEsquerda(n);
-                }
+                return rotacaoDuplaDireita(n);
+            }
+        }else if(n.balance <= -2){
+            if(n.left.balance <= 0){
+                return rotacaoSimplesEsquerda(n);
+            }else{
+                return rotacaoDuplaEsquerda(n);
             }
         }
-        calculaBalance(n);
         return n;
     }
 
     /**
-     * Método que faz a rotação simples a direita dos nodos.
+     * Método que faz a rotação simples a direita dos nodos (o filho direito sobe).
      * @param n Nodo desbalanceado.
      * @return Antigo filho direito do nodo n.
      */
     public Node rotacaoSimplesDireita(Node n){
         Node rightChild = n.right;
-        Node childChildren = null;
-        if(n.right != null){
-            if(n.right.left != null){
-                childChildren = n.right.left;
-            }
-        }
+        Node childChildren = rightChild.left;
         rightChild.left = n;
+        rightChild.father = n.father;
+        n.father = rightChild;
         n.right = childChildren;
+        if(childChildren != null){
+            childChildren.father = n;
+        }
         if(root == n){
             root = rightChild;
         }
+        calculaBalance(n);
+        calculaBalance(rightChild);
+        rotacoes++;
         return rightChild;
     }
    
     /**
      * Método que faz a rotação dupla a direita. Alinha os nodos e chama a rotação simples a direita.
      * @param n Nodo desbalanceado.
-     * @return Antigo filho direito do nodo n.
+     * @return Antigo neto do nodo n, que passa a ser a raiz da subárvore.
      */
     public Node rotacaoDuplaDireita(Node n){
-        Node rightChild = n.right;
-        Node childChildren = rightChild.left;
-        Node insert = childChildren.right;
-
-        rightChild.left = insert;
-        childChildren.right = rightChild;
-        n.right = childChildren;
-
+        n.right = rotacaoSimplesEsquerda(n.right);
         return rotacaoSimplesDireita(n);
     }
 
     /**
-     * Método que faz a rotação simples a esquerda dos nodos.
+     * Método que faz a rotação simples a esquerda dos nodos (o filho esquerdo sobe).
      * @param n Nodo desbalanceado.
      * @return Antigo filho esquerdo do nodo n.
      */
     public Node rotacaoSimplesEsquerda(Node n){
-        Node leftChild;
-        Node childChildren = null;
-        leftChild = n.left;
-        if(n.left != null){
-            if(n.left.right != null){
-                childChildren = n.left.right;
-            }
-        }
+        Node leftChild = n.left;
+        Node childChildren = leftChild.right;
         leftChild.right = n;
+        leftChild.father = n.father;
+        n.father = leftChild;
         n.left = childChildren;
+        if(childChildren != null){
+            childChildren.father = n;
+        }
         if(root == n){
             root = leftChild;
         }
+        calculaBalance(n);
+        calculaBalance(leftChild);
+        rotacoes++;
         return leftChild;
     }
 
     /**
      * Método que faz a rotação dupla a esquerda. Alinha os nodos e chama a rotação simples a esquerda.
      * @param n Nodo desbalanceado.
-     * @return Antigo filho esquerdo do nodo n.
+     * @return Antigo neto do nodo n, que passa a ser a raiz da subárvore.
      */
     public Node rotacaoDuplaEsquerda(Node n){
-        Node leftChild = n.left;
-        Node childChildren = leftChild.right;
-        Node insert = childChildren.left;
+        n.left = rotacaoSimplesDireita(n.left);
+        return rotacaoSimplesEsquerda(n);
+    }
 
-        leftChild.right = insert;
-        childChildren.left = leftChild;
-        n.left = childChildren;
+    /**
+     * Método usado pelas políticas WEIGHT_BALANCED e RELAXED depois de uma inserção.
+     * Se o nodo inserido ficou mais fundo que log(n) na base 1/alfa, sobe até o primeiro
+     * ancestral em que um filho tem mais que alfa do tamanho dele e reconstrói essa
+     * subárvore balanceada, sem rotações.
+     * @param alfa Fração máxima do tamanho de um nodo no filho do bode expiatório.
+     */
+    private void verificaProfundidade(double alfa) {
+        int limite = (int) Math.floor(Math.log(count) / Math.log(1 / alfa));
+        if (profundidadeInserido <= limite) {
+            return;
+        }
+        Node x = inserido;
+        int tamX = 1;
+        while (x.father != null) {
+            Node p = x.father;
+            Node irmao = (p.left == x) ? p.right : p.left;
+            int tamP = tamX + 1 + tamanho(irmao);
+            if (tamX > alfa * tamP) {
+                Node pai = p.father;
+                Node novo = reconstroi(p, tamP);
+                novo.father = pai;
+                if (pai == null) {
+                    root = novo;
+                } else if (pai.left == p) {
+                    pai.left = novo;
+                } else {
+                    pai.right = novo;
+                }
+                // a altura dos ancestrais pode ter diminuído
+                for (Node a = pai; a != null; a = a.father) {
+                    calculaBalance(a);
+                }
+                return;
+            }
+            x = p;
+            tamX = tamP;
+        }
+    }
 
-        return rotacaoSimplesEsquerda(n);
+    /**
+     * Método que conta os nodos de uma subárvore. Notação O: O(n).
+     */
+    private static int tamanho(Node n) {
+        if (n == null)
+            return 0;
+        if (n instanceof NodoDespejado)
+            return ((NodoDespejado) n).nodos;
+        return 1 + tamanho(n.left) + tamanho(n.right);
+    }
+
+    /**
+     * Método que reconstrói uma subárvore perfeitamente balanceada reaproveitando os nodos.
+     * Notação O: O(n).
+     * @param n Raiz da subárvore.
+     * @param tamanho Número de nodos da subárvore.
+     * @return Nova raiz da subárvore.
+     */
+    private Node reconstroi(Node n, int tamanho) {
+        Node[] nodos = new Node[tamanho];
+        achata(n, nodos, 0);
+        reconstrucoes++;
+        nodosReconstruidos += tamanho;
+        return monta(nodos, 0, tamanho - 1, null);
+    }
+
+    /**
+     * Método que copia os nodos de uma subárvore para o vetor na ordem do caminhamento central.
+     * Usa uma pilha explícita do tamanho da altura da subárvore.
+     * @return Próxima posição livre do vetor.
+     */
+    private int achata(Node n, Node[] nodos, int pos) {
+        Node[] pilha = new Node[altura(n) + 1];
+        int topo = 0;
+        while (n != null || topo > 0) {
+            while (n != null) {
+                n = carrega(n);
+                pilha[topo++] = n;
+                n = n.left;
+            }
+            n = pilha[--topo];
+            nodos[pos++] = n;
+            n = n.right;
+        }
+        return pos;
+    }
+
+    private Node monta(Node[] nodos, int ini, int fim, Node father) {
+        if (ini > fim)
+            return null;
+        int meio = (ini + fim) >>> 1;
+        Node n = nodos[meio];
+        descartaOrigem(n);
+        n.father = father;
+        n.left = monta(nodos, ini, meio - 1, n);
+        n.right = monta(nodos, meio + 1, fim, n);
+        calculaBalance(n);
+        return n;
+    }
+
+    /**
+     * Método que reconstrói a árvore inteira perfeitamente balanceada. Na política RELAXED é onde
+     * todo o balanceamento é feito: deve ser chamado quando as inserções param (fim de uma
+     * rajada), ou por uma tarefa de manutenção. Notação O: O(n).
+     */
+    public void rebalance() {
+        if (root != null) {
+            root = reconstroi(root, count);
+            ajustaMemoria();
+        }
+        rebalancePendente = false;
     }
 
+    /**
+     * Método que informa se a política RELAXED deixou nodos desbalanceados desde o último rebalance().
+     * @return Boolean "true" se há balanceamento adiado, caso contrário "false".
+     */
+    public boolean isRebalancePending() {
+        return rebalancePendente;
+    }
+
+    /**
+     * Método que retorna a política de balanceamento.
+     * @return Política atual.
+     */
+    public BalancePolicy getBalancePolicy() {
+        return balancePolicy;
+    }
+
+    /**
+     * Método que troca a política de balanceamento. Ao voltar para STRICT a árvore é
+     * reconstruída, pois as rotações supõem que as subárvores já são AVL; ao sair da RELAXED
+     * com balanceamento pendente também, pois as outras políticas não fazem o trabalho adiado.
+     * @param balancePolicy Nova política.
+     */
+    public void setBalancePolicy(BalancePolicy balancePolicy) {
+        if (balancePolicy == null) {
+            throw new IllegalArgumentException("Politica nula");
+        }
+        if ((balancePolicy == BalancePolicy.STRICT && this.balancePolicy != BalancePolicy.STRICT)
+                || (rebalancePendente && balancePolicy != BalancePolicy.RELAXED)) {
+            rebalance();
+        }
+        if (balancePolicy == BalancePolicy.RELAXED && this.balancePolicy == BalancePolicy.WEIGHT_BALANCED) {
+            rebalancePendente = true; // a árvore alfa-balanceada pode ter nodos com |balance| > 1
+        }
+        this.balancePolicy = balancePolicy;
+    }
+
+    /**
+     * Método que retorna o número de rotações simples feitas (uma rotação dupla conta como duas).
+     * @return Número de rotações.
+     */
+    public long getRotacoes() {
+        return rotacoes;
+    }
+
+    /**
+     * Método que retorna o número de subárvores reconstruídas pela política WEIGHT_BALANCED,
+     * por rebalance() e por addAllSorted.
+     * @return Número de reconstruções.
+     */
+    public long getReconstrucoes() {
+        return reconstrucoes;
+    }
+
+    /**
+     * Método que retorna o total de nodos religados nas reconstruções.
+     * @return Nodos reconstruídos.
+     */
+    public long getNodosReconstruidos() {
+        return nodosReconstruidos;
+    }
+
+    /**
+     * Método que retorna a média de rotações por inserção de um novo nodo.
+     * @return Rotações por inserção (0 se ainda não houve inserções).
+     */
+    public double rotationsPerInsert() {
+        return insercoes == 0 ? 0.0 : (double) rotacoes / insercoes;
+    }
+
+    /**
+     * Método que retorna a média de nodos religados por reconstruções a cada inserção de um novo
+     * nodo, o trabalho das políticas sem rotações comparável a rotationsPerInsert().
+     * @return Nodos religados por inserção (0 se ainda não houve inserções).
+     */
+    public double rebuiltNodesPerInsert() {
+        return insercoes == 0 ? 0.0 : (double) nodosReconstruidos / insercoes;
+    }
+
+    /**
+     * Método que zera os contadores de rotações, reconstruções e inserções.
+     */
+    public void resetBalanceStats() {
+        rotacoes = 0;
+        reconstrucoes = 0;
+        nodosReconstruidos = 0;
+        insercoes = 0;
+    }
+
+
+    /**
+     * Método que gera uma cópia imutável da árvore, armazenada em um vetor contíguo no layout de Eytzinger.
+     * Indicada para fases com muitas consultas e nenhuma inserção. Na política MULTISET cada
+     * elemento aparece uma única vez, sem o contador de ocorrências. Notação O: O(n).
+     * @return Árvore congelada com os mesmos elementos.
+     */
+    public ArvoreCongelada freeze() {
+        int[] ordenados = new int[count];
+        exportaNodos(ordenados, null);
+        return new ArvoreCongelada(ordenados);
+    }
+
+    /**
+     * Método que copia os nodos da árvore para vetores, na ordem do caminhamento central.
+     * Notação O: O(n).
+     * @param chaves Vetor de destino dos elementos, com tamanho de pelo menos count.
+     * @param ocorrencias Vetor de destino das ocorrências de cada nodo, ou null.
+     */
+    void exportaNodos(int[] chaves, int[] ocorrencias) {
+        Node[] pilha = new Node[altura(root) + 1];
+        int topo = 0;
+        int pos = 0;
+        Node n = root;
+        while (n != null || topo > 0) {
+            while (n != null) {
+                n = carrega(n);
+                pilha[topo++] = n;
+                n = n.left;
+            }
+            n = pilha[--topo];
+            chaves[pos] = n.element;
+            if (ocorrencias != null)
+                ocorrencias[pos] = n.occurrences;
+            pos++;
+            n = n.right;
+        }
+        ajustaMemoria();
+    }
+
+    /**
+     * Método que retorna o número de nodos da árvore (elementos distintos, exceto na política ALLOW).
+     * @return Integer count.
+     */
+    int nodeCount() {
+        return count;
+    }
+
+    /**
+     * Método que monta uma árvore perfeitamente balanceada a partir de um vetor ordenado.
+     * Usado por ArvoreCongelada.thaw(). Notação O: O(n).
+     * @param ordenados Elementos em ordem crescente.
+     * @return Árvore com os elementos do vetor.
+     */
+    static ArvoreAVL fromSorted(int[] ordenados) {
+        return fromSorted(ordenados, null, DuplicatePolicy.ALLOW);
+    }
+
+    /**
+     * Método que monta uma árvore perfeitamente balanceada a partir dos vetores gerados por exportaNodos.
+     * @param ordenados Elementos em ordem crescente.
+     * @param ocorrencias Ocorrências de cada elemento, ou null se todas forem 1.
+     * @param policy Política para elementos repetidos da nova árvore.
+     * @return Árvore com os elementos do vetor.
+     */
+    static ArvoreAVL fromSorted(int[] ordenados, int[] ocorrencias, DuplicatePolicy policy) {
+        ArvoreAVL arvore = new ArvoreAVL(policy);
+        arvore.root = fromSorted(ordenados, 0, ordenados.length - 1, null);
+        arvore.count = ordenados.length;
+        arvore.total = ordenados.length;
+        arvore.residentes = ordenados.length;
+        for (int e : ordenados) {
+            arvore.bytesNodos += bytesNodo(e);
+        }
+        if (ocorrencias != null) {
+            arvore.total = 0;
+            arvore.setOccurrences(arvore.root, ocorrencias, 0);
+        }
+        return arvore;
+    }
+
+    /**
+     * Método que copia as ocorrências para os nodos na ordem do caminhamento central.
+     * @return Próxima posição do vetor após visitar a subárvore de n.
+     */
+    private int setOccurrences(Node n, int[] ocorrencias, int pos) {
+        if (n == null)
+            return pos;
+        pos = setOccurrences(n.left, ocorrencias, pos);
+        n.occurrences = ocorrencias[pos];
+        total += ocorrencias[pos];
+        pos++;
+        return setOccurrences(n.right, ocorrencias, pos);
+    }
+
+    private static Node fromSorted(int[] ordenados, int ini, int fim, Node father) {
+        if (ini > fim)
+            return null;
+        int meio = (ini + fim) >>> 1;
+        Node n = new Node(ordenados[meio]);
+        n.father = father;
+        n.left = fromSorted(ordenados, ini, meio - 1, n);
+        n.right = fromSorted(ordenados, meio + 1, fim, n);
+        n.altura = 1 + Math.max(altura(n.left), altura(n.right));
+        n.balance = altura(n.right) - altura(n.left);
+        return n;
+    }
+
+    /**
+     * Método que liga o orçamento de memória: quando memoryFootprint() passa de "bytes",
+     * as subárvores menos usadas recentemente são gravadas no arquivo e trocadas por um
+     * NodoDespejado; são lidas de volta automaticamente quando uma operação passa por elas.
+     * Uma subárvore lida e não alterada volta a ser despejada sem gravar nada, então uma
+     * sequência de consultas não escreve no arquivo. O arquivo é compactado quando mais da
+     * metade dele não é mais referenciada.
+     * @param bytes Orçamento estimado para memoryFootprint().
+     * @param arquivo Arquivo de despejo (criado ou truncado).
+     * @throws IOException Se o arquivo não puder ser aberto.
+     */
+    public void setHeapBudget(long bytes, Path arquivo) throws IOException {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Orcamento invalido: " + bytes);
+        }
+        disableHeapBudget();
+        despejo = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        arquivoDespejo = arquivo;
+        fimDespejo = 0;
+        bytesVivos = 0;
+        orcamento = bytes;
+        ajustaMemoria();
+    }
+
+    /**
+     * Método que desliga o orçamento de memória, trazendo todas as subárvores de volta e fechando o arquivo.
+     * @throws IOException Se o arquivo não puder ser lido ou fechado.
+     */
+    public void disableHeapBudget() throws IOException {
+        if (despejo == null) {
+            return;
+        }
+        try {
+            carregaTudo(root);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        despejo.close();
+        despejo = null;
+        orcamento = 0;
+        bytesVivos = 0;
+        Files.deleteIfExists(arquivoDespejo);
+    }
+
+    private void carregaTudo(Node n) {
+        if (n != null) {
+            n = carrega(n);
+            n.origem = null; // as páginas somem com o arquivo
+            carregaTudo(n.left);
+            carregaTudo(n.right);
+        }
+    }
+
+    /**
+     * Método que estima a memória ocupada pela árvore: o objeto da árvore, os nodos em memória
+     * (com os Integer fora da faixa compartilhada -128..127 e os NodoDespejado) e a cache de
+     * contains, se ligada. É a mesma estimativa comparada com o orçamento de setHeapBudget.
+     * Supõe uma JVM de 64 bits com referências comprimidas. Notação O: O(1).
+     * @return Estimativa em bytes.
+     */
+    public long memoryFootprint() {
+        long bytes = BYTES_ARVORE + bytesNodos;
+        if (cache != null) {
+            bytes += cache.memoryFootprint();
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimativa da memória de um nodo com o elemento, incluindo o Integer se ele não for compartilhado.
+     */
+    private static long bytesNodo(Integer element) {
+        return (element < -128 || element > 127) ? BYTES_NODE + BYTES_INTEGER : BYTES_NODE;
+    }
+
+    /**
+     * Método que retorna o número de nodos em memória.
+     * @return Nodos em memória.
+     */
+    public int getNodosResidentes() {
+        return residentes;
+    }
+
+    /**
+     * Método que retorna quantas subárvores foram gravadas no arquivo de despejo.
+     * @return Número de despejos.
+     */
+    public long getDespejos() {
+        return despejos;
+    }
+
+    /**
+     * Método que retorna quantas subárvores foram despejadas sem gravar, porque não foram
+     * alteradas desde que foram lidas do arquivo.
+     * @return Número de despejos reaproveitados.
+     */
+    public long getReaproveitamentos() {
+        return reaproveitamentos;
+    }
+
+    /**
+     * Método que retorna quantos bytes foram gravados no arquivo de despejo (sem contar as
+     * cópias da compactação).
+     * @return Bytes gravados.
+     */
+    public long getBytesGravados() {
+        return bytesGravados;
+    }
+
+    /**
+     * Método que retorna quantas subárvores foram lidas de volta do arquivo de despejo.
+     * @return Número de faltas.
+     */
+    public long getFaltas() {
+        return faltas;
+    }
+
+    /**
+     * Método que marca um nodo e os seus ancestrais como alterados: as páginas de onde as
+     * subárvores deles foram lidas deixam de ser cópias válidas. Notação O: O(log(n)).
+     * @param n Nodo alterado.
+     */
+    private void alterado(Node n) {
+        for (; n != null; n = n.father) {
+            descartaOrigem(n);
+        }
+    }
+
+    /**
+     * Método que descarta a página de origem de um nodo cuja subárvore vai mudar.
+     */
+    private void descartaOrigem(Node n) {
+        if (n.origem != null) {
+            bytesVivos -= n.origem.bytes;
+            n.origem = null;
+        }
+    }
+
+    /**
+     * Método que lê uma página do arquivo de despejo.
+     * @param pagina Posição da página.
+     * @param bytes Tamanho da página.
+     * @return Conteúdo da página, pronto para leitura.
+     */
+    private ByteBuffer lePagina(long pagina, int bytes) {
+        ByteBuffer dados = ByteBuffer.allocate(bytes);
+        try {
+            while (dados.hasRemaining()) {
+                if (despejo.read(dados, pagina + dados.position()) < 0) {
+                    throw new IOException("Fim inesperado do arquivo de despejo");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dados.flip();
+        return dados;
+    }
+
+    /**
+     * Método que traz de volta para a memória uma subárvore despejada, religando-a ao pai.
+     * A página continua no arquivo, guardada como origem da subárvore lida.
+     * @param n Nodo qualquer.
+     * @return O próprio n, ou a raiz da subárvore lida se n for um NodoDespejado.
+     */
+    private Node carrega(Node n) {
+        if (!(n instanceof NodoDespejado)) {
+            return n;
+        }
+        NodoDespejado d = (NodoDespejado) n;
+        long[] lidos = new long[1];
+        Node sub = le(lePagina(d.pagina, d.bytes), d.father, lidos);
+        Node pai = d.father;
+        if (pai == null) {
+            root = sub;
+        } else if (pai.left == d) {
+            pai.left = sub;
+        } else {
+            pai.right = sub;
+        }
+        sub.origem = d;
+        residentes += d.nodosPagina;
+        bytesNodos += lidos[0] - BYTES_NODO_DESPEJADO;
+        faltas++;
+        return sub;
+    }
+
+    /**
+     * Método que despeja subárvores frias até memoryFootprint() caber no orçamento.
+     * Só é chamado no fim das operações públicas, nunca no meio de uma descida.
+     */
+    private void ajustaMemoria() {
+        if (despejo == null) {
+            return;
+        }
+        long alvo = Math.max(MINIMO_PAGINA, orcamento / BYTES_NODE / 8);
+        while (memoryFootprint() > orcamento) {
+            Node vitima = escolheVitima(alvo);
+            if (vitima == null) {
+                return; // só restou a raiz em memória
+            }
+            despeja(vitima);
+        }
+        if (fimDespejo > MINIMO_COMPACTACAO && fimDespejo > 2 * bytesVivos) {
+            try {
+                compacta();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Método que copia as páginas ainda referenciadas, pelos NodoDespejado e pelas origens das
+     * subárvores limpas, para um novo arquivo de despejo e substitui o antigo.
+     * Notação O: O(bytes vivos).
+     */
+    private void compacta() throws IOException {
+        Path temporario = arquivoDespejo.resolveSibling(arquivoDespejo.getFileName() + ".tmp");
+        FileChannel novo = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long[] fimNovo = new long[1];
+        compactaAux(root, novo, fimNovo, new HashMap<>());
+        despejo.close();
+        Files.move(temporario, arquivoDespejo, StandardCopyOption.REPLACE_EXISTING);
+        despejo = novo;
+        fimDespejo = fimNovo[0];
+        bytesVivos = fimDespejo;
+    }
+
+    /**
+     * Método que percorre os nodos em memória trocando cada NodoDespejado, e cada origem, por
+     * outro que aponta para a cópia da página no novo arquivo.
+     * @param copias Posição no novo arquivo de cada página já copiada, pois a página de uma
+     *               subárvore limpa e a de um NodoDespejado dentro dela referenciam a mesma página interna.
+     */
+    private void compactaAux(Node n, FileChannel novo, long[] fimNovo, Map<Long, Long> copias) throws IOException {
+        if (n == null) {
+            return;
+        }
+        if (n.origem != null) {
+            n.origem = copiaDespejado(n.origem, novo, fimNovo, copias);
+        }
+        Node[] filhos = {n.left, n.right};
+        for (int i = 0; i < 2; i++) {
+            if (filhos[i] instanceof NodoDespejado) {
+                Node copia = copiaDespejado((NodoDespejado) filhos[i], novo, fimNovo, copias);
+                copia.father = n;
+                if (i == 0) {
+                    n.left = copia;
+                } else {
+                    n.right = copia;
+                }
+            } else {
+                compactaAux(filhos[i], novo, fimNovo, copias);
+            }
+        }
+    }
+
+    private NodoDespejado copiaDespejado(NodoDespejado d, FileChannel novo, long[] fimNovo, Map<Long, Long> copias) throws IOException {
+        NodoDespejado copia = new NodoDespejado(copiaPagina(d.pagina, d.bytes, novo, fimNovo, copias), d.bytes, d.nodos, d.nodosPagina);
+        Node antigo = d;
+        Node destino = copia;
+        destino.altura = antigo.altura;
+        destino.balance = antigo.balance;
+        return copia;
+    }
+
+    /**
+     * Método que copia uma página para o fim do novo arquivo, copiando antes as páginas
+     * internas que ela referencia e corrigindo as posições delas. O tamanho da página não muda.
+     * @return Posição da página no novo arquivo.
+     */
+    private long copiaPagina(long pagina, int bytes, FileChannel novo, long[] fimNovo, Map<Long, Long> copias) throws IOException {
+        Long copiada = copias.get(pagina);
+        if (copiada != null) {
+            return copiada;
+        }
+        ByteBuffer dados = lePagina(pagina, bytes);
+        while (dados.hasRemaining()) {
+            byte marca = dados.get();
+            if (marca == MARCA_NODO) {
+                dados.position(dados.position() + 16); // element, occurrences, altura, balance
+            } else if (marca == MARCA_DESPEJADO) {
+                int pos = dados.position();
+                long interna = copiaPagina(dados.getLong(pos), dados.getInt(pos + 8), novo, fimNovo, copias);
+                dados.putLong(pos, interna);
+                dados.position(pos + 28); // pagina, bytes, nodos, nodosPagina, altura, balance
+            }
+        }
+        dados.flip();
+        long posicao = fimNovo[0];
+        while (dados.hasRemaining()) {
+            fimNovo[0] += novo.write(dados, fimNovo[0]);
+        }
+        copias.put(pagina, posicao);
+        return posicao;
+    }
+
+    /**
+     * Método que desce a partir da raiz sempre pelo filho acessado há mais tempo, até chegar
+     * numa subárvore com no máximo cerca de "alvo" nodos ou numa subárvore limpa, que é
+     * despejada sem gravar.
+     * @param alvo Tamanho desejado da subárvore, em nodos.
+     * @return Raiz da subárvore a despejar, ou null se não houver nenhuma além da raiz.
+     */
+    private Node escolheVitima(long alvo) {
+        Node n = root;
+        while (n != null) {
+            Node l = (n.left instanceof NodoDespejado) ? null : n.left;
+            Node r = (n.right instanceof NodoDespejado) ? null : n.right;
+            Node fria;
+            if (l == null) {
+                fria = r;
+            } else if (r == null) {
+                fria = l;
+            } else {
+                fria = (l.acesso - r.acesso <= 0) ? l : r;
+            }
+            if (fria == null) {
+                return (n == root) ? null : n;
+            }
+            n = fria;
+            // despejar só uma parte de uma subárvore limpa obrigaria a gravá-la de novo
+            if (n.origem != null || (1L << Math.min(n.altura + 1, 62)) - 1 <= alvo) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Método que troca uma subárvore por um NodoDespejado. Se ela não foi alterada desde que
+     * foi lida, reaproveita a página de origem; senão grava uma nova página no fim do arquivo,
+     * em que as subárvores internas limpas entram só como referência para as suas páginas.
+     * @param n Raiz da subárvore (nunca a raiz da árvore).
+     */
+    private void despeja(Node n) {
+        long[] contadores = new long[4]; //nodos da página, nodos da subárvore, nodos e bytes liberados da memória
+        NodoDespejado d = n.origem;
+        if (d != null) {
+            contaResidentes(n, contadores);
+            reaproveitamentos++;
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                escreveNodo(n, new DataOutputStream(bytes), contadores);
+                ByteBuffer dados = ByteBuffer.wrap(bytes.toByteArray());
+                long pagina = fimDespejo;
+                while (dados.hasRemaining()) {
+                    fimDespejo += despejo.write(dados, fimDespejo);
+                }
+                d = new NodoDespejado(pagina, bytes.size(), (int) contadores[1], (int) contadores[0]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bytesVivos += d.bytes;
+            bytesGravados += d.bytes;
+            despejos++;
+        }
+        Node marcador = d;
+        marcador.altura = n.altura;
+        marcador.balance = n.balance;
+        marcador.father = n.father;
+        if (n.father.left == n) {
+            n.father.left = marcador;
+        } else {
+            n.father.right = marcador;
+        }
+        residentes -= (int) contadores[2];
+        bytesNodos += BYTES_NODO_DESPEJADO - contadores[3];
+    }
+
+    // Marcadores da serialização em pré-ordem das subárvores despejadas
+    private static final byte MARCA_NULO = 0;
+    private static final byte MARCA_NODO = 1;
+    private static final byte MARCA_DESPEJADO = 2;
+
+    /**
+     * Método que grava uma subárvore em pré-ordem. Uma subárvore já despejada, ou em memória
+     * mas sem alterações desde que foi lida, entra só como referência para a sua página.
+     * @param contadores Acumula os nodos gravados, os nodos da subárvore e os nodos e bytes em memória.
+     */
+    private static void escreve(Node n, DataOutputStream out, long[] contadores) throws IOException {
+        if (n == null) {
+            out.writeByte(MARCA_NULO);
+        } else if (n instanceof NodoDespejado || n.origem != null) {
+            NodoDespejado d = (n instanceof NodoDespejado) ? (NodoDespejado) n : n.origem;
+            out.writeByte(MARCA_DESPEJADO);
+            out.writeLong(d.pagina);
+            out.writeInt(d.bytes);
+            out.writeInt(d.nodos);
+            out.writeInt(d.nodosPagina);
+            out.writeInt(n.altura);
+            out.writeInt(n.balance);
+            contadores[1] += d.nodos;
+            contaResidentes(n, contadores);
+        } else {
+            escreveNodo(n, out, contadores);
+        }
+    }
+
+    /**
+     * Método que grava um nodo em memória e as suas subárvores, mesmo que ele tenha página de origem.
+     */
+    private static void escreveNodo(Node n, DataOutputStream out, long[] contadores) throws IOException {
+        out.writeByte(MARCA_NODO);
+        out.writeInt(n.element);
+        out.writeInt(n.occurrences);
+        out.writeInt(n.altura);
+        out.writeInt(n.balance);
+        contadores[0]++;
+        contadores[1]++;
+        contadores[2]++;
+        contadores[3] += bytesNodo(n.element);
+        escreve(n.left, out, contadores);
+        escreve(n.right, out, contadores);
+    }
+
+    /**
+     * Método que soma os nodos e os bytes em memória de uma subárvore que não vai ser gravada.
+     */
+    private static void contaResidentes(Node n, long[] contadores) {
+        if (n == null) {
+            return;
+        }
+        if (n instanceof NodoDespejado) {
+            contadores[3] += BYTES_NODO_DESPEJADO;
+            return;
+        }
+        contadores[2]++;
+        contadores[3] += bytesNodo(n.element);
+        contaResidentes(n.left, contadores);
+        contaResidentes(n.right, contadores);
+    }
+
+    /**
+     * Método que lê uma subárvore gravada por escreve.
+     * @param father Pai da raiz da subárvore.
+     * @param bytes Acumula a estimativa de memória dos nodos lidos.
+     */
+    private static Node le(ByteBuffer in, Node father, long[] bytes) {
+        byte marca = in.get();
+        if (marca == MARCA_NULO) {
+            return null;
+        }
+        Node n;
+        if (marca == MARCA_DESPEJADO) {
+            n = new NodoDespejado(in.getLong(), in.getInt(), in.getInt(), in.getInt());
+            n.altura = in.getInt();
+            n.balance = in.getInt();
+            bytes[0] += BYTES_NODO_DESPEJADO;
+        } else {
+            n = new Node(in.getInt());
+            n.occurrences = in.getInt();
+            n.altura = in.getInt();
+            n.balance = in.getInt();
+            bytes[0] += bytesNodo(n.element);
+            n.left = le(in, n, bytes);
+            n.right = le(in, n, bytes);
+        }
+        n.father = father;
+        return n;
+    }
 
     /**
      * Método que retorna uma lista encadeada com os elementos da árvore na ordem do caminhamento central.
@@ -335,21 +1615,53 @@ public class ArvoreAVL {
      */
     public LinkedListOfInteger positionsCentral() {
         LinkedListOfInteger res = new LinkedListOfInteger();
-        positionsCentralAux(root, res);
+        positionsCentral(Integer.MIN_VALUE, Integer.MAX_VALUE, res);
+        return res;
+    }
+
+    /**
+     * Método que retorna uma lista encadeada com os elementos da árvore no intervalo fechado [lo, hi],
+     * na ordem do caminhamento central. Notação O: O(log(n) + k) para k elementos no intervalo.
+     * @param lo Menor elemento do intervalo.
+     * @param hi Maior elemento do intervalo.
+     * @return Lista encadeada.
+     */
+    public LinkedListOfInteger positionsCentral(int lo, int hi) {
+        LinkedListOfInteger res = new LinkedListOfInteger();
+        positionsCentral(lo, hi, res);
         return res;
     }
 
     /**
-     * Método que monta a lista encadeada com os elementos da árvore na ordem do caminhamento central.
-     * @param n Nodo.
+     * Método que acrescenta ao final da lista os elementos da árvore no intervalo fechado [lo, hi].
+     * @param lo Menor elemento do intervalo.
+     * @param hi Maior elemento do intervalo.
      * @param res Lista.
      */
-    private void positionsCentralAux(Node n, LinkedListOfInteger res) {
-        if (n != null) {
-            positionsCentralAux(n.left, res); //Visita a subárvore da esquerda
+    void positionsCentral(int lo, int hi, LinkedListOfInteger res) {
+        // caminhamento central com pilha explícita, pulando as subárvores fora do intervalo
+        Node[] pilha = new Node[altura(root) + 1];
+        int topo = 0;
+        Node n = root;
+        while (n != null || topo > 0) {
+            while (n != null) {
+                n = carrega(n);
+                if (n.element >= lo) {
+                    pilha[topo++] = n; //Visita a subárvore da esquerda antes do nodo
+                    n = n.left;
+                } else {
+                    n = n.right; //O nodo e a subárvore da esquerda estão antes do intervalo
+                }
+            }
+            if (topo == 0)
+                break;
+            n = pilha[--topo];
+            if (n.element > hi)
+                break; //Os nodos seguintes também estão depois do intervalo
             res.add(n.element); //Visita o nodo
-            positionsCentralAux(n.right, res); //Visita a subárvore da direita
+            n = n.right; //Visita a subárvore da direita
         }
+        ajustaMemoria();
     }
 
     /**
@@ -365,14 +1677,15 @@ public class ArvoreAVL {
             while (!fila.isEmpty()) {
                 atual = fila.dequeue();
                 if (atual.left != null) {
-                    fila.enqueue(atual.left);
+                    fila.enqueue(carrega(atual.left));
                 }
                 if (atual.right != null) {
-                    fila.enqueue(atual.right);
+                    fila.enqueue(carrega(atual.right));
                 }
                 res.add(atual.element);
             }
         }
+        ajustaMemoria();
         return res;
     }
 
@@ -380,6 +1693,7 @@ public class ArvoreAVL {
         if (nodo == null) {
             return;
         }
+        nodo = carrega(nodo);
 
         GeraConexoesDOT(nodo.left);
         //   "nodeA":esq -> "nodeB" [color="0.650 0.700 0.700"]
@@ -399,6 +1713,7 @@ public class ArvoreAVL {
         if (nodo == null) {
             return;
         }
+        nodo = carrega(nodo);
         GeraNodosDOT(nodo.left);
         //node10[label = "<esq> | 10 | <dir> "];
         System.out.println("node" + nodo.element + "[label = \"<esq> | " + nodo.element + " | <dir> \"]" + "\n");
@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Classe que implementa uma ArvoreAVL persistente em disco.
+ * Toda alteração é registrada em um log somente de acréscimo (write-ahead log) antes de ser
+ * aplicada na árvore em memória. Os registros são acumulados em um buffer e gravados em grupo;
+ * o fsync é feito a cada "fsyncEvery" operações, então no máximo essa quantidade de operações
+ * é perdida se o processo morrer. snapshot() grava a árvore inteira e recomeça o log, de modo
+ * que a recuperação carrega o snapshot e reaplica somente o final do log.
+ *
+ * Arquivos no diretório: "arvore.snapshot" e "arvore.log". Os dois começam com um número de
+ * geração; o log só é reaplicado se for da mesma geração do snapshot, assim uma queda entre a
+ * gravação do snapshot e o reinício do log não aplica as operações duas vezes. Um log de
+ * geração mais nova que o snapshot (snapshot perdido) ou com cabeçalho desconhecido faz a
+ * abertura falhar em vez de ser descartado.
+ *
+ * O snapshot e o log também guardam a política para repetidos. A política passada para open()
+ * só é usada num diretório novo; depois vale a política gravada, pois reaplicar o log com
+ * outra política mudaria a árvore (uma inserção repetida vira ocorrência, nodo ou nada). Um
+ * log com política diferente da do snapshot faz a abertura falhar.
+ *
+ * Cada registro do log tem um CRC-32C. A reaplicação para no primeiro registro incompleto ou
+ * com CRC errado (final rasgado por uma queda) e trunca o log nesse ponto.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class ArvoreAVLDuravel {
+
+    private static final String ARQUIVO_LOG = "arvore.log";
+    private static final String ARQUIVO_SNAPSHOT = "arvore.snapshot";
+    private static final int MAGICO_LOG = 0x41564C4C; //"AVLL"
+    private static final int MAGICO_SNAPSHOT = 0x41564C53; //"AVLS"
+    private static final int TAMANHO_CABECALHO_LOG = 16; //mágico + geração + política
+    private static final int TAMANHO_REGISTRO = 9; //operação + elemento + CRC-32C dos dois
+
+    // Operações registradas no log
+    private static final byte OP_ADD = 1;
+    private static final byte OP_CLEAR = 2;
+
+    // Atributos da árvore persistente
+    private final Path diretorio;
+    private final int fsyncEvery; //operações entre dois fsync
+    private final ByteBuffer buffer; //registros ainda não gravados no canal
+    private final CRC32C crc; //calcula o CRC dos registros
+    private ArvoreAVL arvore;
+    private FileChannel log;
+    private long geracao; //geração do snapshot e do log atuais
+    private int pendentes; //operações desde o último fsync
+    private long operacoesRecuperadas; //operações do log reaplicadas na abertura
+    private long tempoRecuperacao; //tempo da recuperação, em nanossegundos
+
+    /**
+     * Método construtor da classe ArvoreAVLDuravel. Usar open().
+     */
+    private ArvoreAVLDuravel(Path diretorio, int fsyncEvery) {
+        this.diretorio = diretorio;
+        this.fsyncEvery = fsyncEvery;
+        buffer = ByteBuffer.allocateDirect(TAMANHO_REGISTRO * Math.min(fsyncEvery, 8192));
+        crc = new CRC32C();
+    }
+
+    /**
+     * Método que abre (ou cria) uma árvore persistente, recuperando o snapshot e o log existentes.
+     * @param diretorio Diretório dos arquivos da árvore.
+     * @param policy Política para elementos repetidos, usada se ainda não houver snapshot nem log.
+     * @param fsyncEvery Número máximo de operações que podem ser perdidas numa queda (1 = fsync a cada operação).
+     * @return Árvore recuperada.
+     * @throws IOException Se os arquivos não puderem ser lidos ou estiverem corrompidos.
+     */
+    public static ArvoreAVLDuravel open(Path diretorio, ArvoreAVL.DuplicatePolicy policy, int fsyncEvery) throws IOException {
+        if (fsyncEvery <= 0) {
+            throw new IllegalArgumentException("fsyncEvery deve ser positivo: " + fsyncEvery);
+        }
+        Files.createDirectories(diretorio);
+        ArvoreAVLDuravel d = new ArvoreAVLDuravel(diretorio, fsyncEvery);
+        long inicio = System.nanoTime();
+        d.carregaSnapshot(policy);
+        d.reaplicaLog();
+        d.tempoRecuperacao = System.nanoTime() - inicio;
+        return d;
+    }
+
+    /**
+     * Método que carrega o snapshot, se existir.
+     */
+    private void carregaSnapshot(ArvoreAVL.DuplicatePolicy policy) throws IOException {
+        Path arquivo = diretorio.resolve(ARQUIVO_SNAPSHOT);
+        geracao = 0;
+        arvore = new ArvoreAVL(policy);
+        if (!Files.exists(arquivo)) {
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(20);
+            leTudo(canal, cabecalho);
+            if (cabecalho.getInt() != MAGICO_SNAPSHOT) {
+                throw new IOException("Snapshot invalido: " + arquivo);
+            }
+            geracao = cabecalho.getLong();
+            ArvoreAVL.DuplicatePolicy salva = politica(cabecalho.getInt(), arquivo);
+            int n = cabecalho.getInt();
+            int[] chaves = new int[n];
+            int[] ocorrencias = new int[n];
+            ByteBuffer dados = ByteBuffer.allocate(8 * n);
+            leTudo(canal, dados);
+            for (int i = 0; i < n; i++) {
+                chaves[i] = dados.getInt();
+                ocorrencias[i] = dados.getInt();
+            }
+            arvore = ArvoreAVL.fromSorted(chaves, ocorrencias, salva);
+        }
+    }
+
+    /**
+     * Método que reaplica o log da geração atual e deixa o canal pronto para novos registros.
+     * A reaplicação para no primeiro registro incompleto, com CRC errado ou com operação
+     * desconhecida, e o log é truncado nesse ponto.
+     */
+    private void reaplicaLog() throws IOException {
+        Path arquivo = diretorio.resolve(ARQUIVO_LOG);
+        log = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long tamanho = log.size();
+        if (tamanho < TAMANHO_CABECALHO_LOG) {
+            // log inexistente, ou queda antes de o cabeçalho ser gravado
+            iniciaLog();
+            return;
+        }
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO_LOG);
+        while (cabecalho.hasRemaining()) {
+            log.read(cabecalho, cabecalho.position());
+        }
+        cabecalho.flip();
+        if (cabecalho.getInt() != MAGICO_LOG) {
+            throw new IOException("Log invalido: " + arquivo);
+        }
+        long geracaoLog = cabecalho.getLong();
+        ArvoreAVL.DuplicatePolicy politicaLog = politica(cabecalho.getInt(), arquivo);
+        if (geracaoLog > geracao) {
+            throw new IOException("Log da geracao " + geracaoLog + " mais nova que o snapshot (geracao " + geracao + ")");
+        }
+        if (geracaoLog < geracao) {
+            // queda entre a gravação do snapshot e o reinício do log: o snapshot já tem tudo
+            iniciaLog();
+            return;
+        }
+        if (geracao == 0) {
+            arvore = new ArvoreAVL(politicaLog); // sem snapshot: vale a política com que o log foi gravado
+        } else if (politicaLog != arvore.getDuplicatePolicy()) {
+            throw new IOException("Log com politica " + politicaLog + ", mas o snapshot tem " + arvore.getDuplicatePolicy());
+        }
+        long pos = TAMANHO_CABECALHO_LOG;
+        ByteBuffer leitura = ByteBuffer.allocate(TAMANHO_REGISTRO * 8192);
+        boolean valido = true;
+        while (valido && tamanho - pos >= TAMANHO_REGISTRO) {
+            leitura.clear();
+            leitura.limit((int) Math.min(leitura.capacity(), (tamanho - pos) / TAMANHO_REGISTRO * TAMANHO_REGISTRO));
+            while (leitura.hasRemaining()) {
+                log.read(leitura, pos + leitura.position());
+            }
+            leitura.flip();
+            while (leitura.hasRemaining()) {
+                byte op = leitura.get();
+                int element = leitura.getInt();
+                int esperado = leitura.getInt();
+                if (calculaCrc(op, element) != esperado || (op != OP_ADD && op != OP_CLEAR)) {
+                    valido = false;
+                    break;
+                }
+                if (op == OP_ADD) {
+                    arvore.add(element);
+                } else {
+                    arvore.clear();
+                }
+                operacoesRecuperadas++;
+                pos += TAMANHO_REGISTRO;
+            }
+        }
+        // descarta o final rasgado, para os próximos registros não ficarem depois dele
+        if (pos < tamanho) {
+            log.truncate(pos);
+            log.force(false);
+        }
+        log.position(pos);
+    }
+
+    /**
+     * Método que converte a política gravada num cabeçalho.
+     */
+    private static ArvoreAVL.DuplicatePolicy politica(int ordinal, Path arquivo) throws IOException {
+        ArvoreAVL.DuplicatePolicy[] politicas = ArvoreAVL.DuplicatePolicy.values();
+        if (ordinal < 0 || ordinal >= politicas.length) {
+            throw new IOException("Politica desconhecida " + ordinal + " em " + arquivo);
+        }
+        return politicas[ordinal];
+    }
+
+    /**
+     * Método que calcula o CRC-32C de um registro (operação e elemento).
+     */
+    private int calculaCrc(byte op, int element) {
+        crc.reset();
+        crc.update(op);
+        crc.update(element >>> 24);
+        crc.update(element >>> 16);
+        crc.update(element >>> 8);
+        crc.update(element);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Método que recomeça o log vazio na geração atual.
+     */
+    private void iniciaLog() throws IOException {
+        log.truncate(0);
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO_LOG);
+        cabecalho.putInt(MAGICO_LOG).putLong(geracao).putInt(arvore.getDuplicatePolicy().ordinal()).flip();
+        escreveTudo(log, cabecalho, 0);
+        log.position(TAMANHO_CABECALHO_LOG);
+        log.force(false);
+    }
+
+    /**
+     * Método que adiciona um elemento na árvore, registrando a operação no log.
+     * @param element Elemento a ser adicionado.
+     * @throws IOException Se o log não puder ser gravado.
+     */
+    public void add(int element) throws IOException {
+        registra(OP_ADD, element);
+        arvore.add(element);
+    }
+
+    /**
+     * Método que esvazia a árvore, registrando a operação no log.
+     * @throws IOException Se o log não puder ser gravado.
+     */
+    public void clear() throws IOException {
+        registra(OP_CLEAR, 0);
+        arvore.clear();
+    }
+
+    /**
+     * Método que acrescenta um registro ao buffer, gravando-o quando estiver cheio e
+     * fazendo o fsync a cada fsyncEvery operações.
+     */
+    private void registra(byte op, int element) throws IOException {
+        if (buffer.remaining() < TAMANHO_REGISTRO) {
+            descarregaBuffer();
+        }
+        buffer.put(op).putInt(element).putInt(calculaCrc(op, element));
+        pendentes++;
+        if (pendentes >= fsyncEvery) {
+            commit();
+        }
+    }
+
+    private void descarregaBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Método que grava os registros pendentes e faz o fsync do log.
+     * @throws IOException Se o log não puder ser gravado.
+     */
+    public void commit() throws IOException {
+        descarregaBuffer();
+        log.force(false);
+        pendentes = 0;
+    }
+
+    /**
+     * Método que grava um snapshot da árvore e recomeça o log. Notação O: O(n).
+     * @throws IOException Se os arquivos não puderem ser gravados.
+     */
+    public void snapshot() throws IOException {
+        commit();
+        int n = arvore.nodeCount();
+        int[] chaves = new int[n];
+        int[] ocorrencias = new int[n];
+        arvore.exportaNodos(chaves, ocorrencias);
+
+        Path temporario = diretorio.resolve(ARQUIVO_SNAPSHOT + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer dados = ByteBuffer.allocate(20 + 8 * n);
+            dados.putInt(MAGICO_SNAPSHOT).putLong(geracao + 1);
+            dados.putInt(arvore.getDuplicatePolicy().ordinal()).putInt(n);
+            for (int i = 0; i < n; i++) {
+                dados.putInt(chaves[i]).putInt(ocorrencias[i]);
+            }
+            dados.flip();
+            escreveTudo(canal, dados, 0);
+            canal.force(true);
+        }
+        Files.move(temporario, diretorio.resolve(ARQUIVO_SNAPSHOT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // a troca de nome só é durável depois do fsync do diretório; antes disso o log não pode ser recomeçado
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        }
+        geracao++;
+        iniciaLog();
+    }
+
+    /**
+     * Método que grava as operações pendentes e fecha o log.
+     * @throws IOException Se o log não puder ser gravado.
+     */
+    public void close() throws IOException {
+        commit();
+        log.close();
+    }
+
+    /**
+     * Método que retorna a árvore em memória, para consultas. Alterações devem ser feitas
+     * somente por esta classe, senão não são registradas no log.
+     * @return Árvore em memória.
+     */
+    public ArvoreAVL getArvore() {
+        return arvore;
+    }
+
+    /**
+     * Método que verifica se um elemento está ou não na árvore.
+     * @param element Elemento a ser buscado.
+     * @return Boolean "true" se o elemento está na árvore, caso contrário "false".
+     */
+    public boolean contains(int element) {
+        return arvore.contains(element);
+    }
+
+    /**
+     * Método que retorna a quantidade de elementos na árvore.
+     * @return Quantidade de elementos.
+     */
+    public int size() {
+        return arvore.size();
+    }
+
+    /**
+     * Método que retorna quantas operações do log foram reaplicadas na abertura.
+     * @return Operações recuperadas.
+     */
+    public long getOperacoesRecuperadas() {
+        return operacoesRecuperadas;
+    }
+
+    /**
+     * Método que retorna o tempo gasto na recuperação (snapshot + log), em milissegundos.
+     * @return Tempo de recuperação.
+     */
+    public double getTempoRecuperacaoMs() {
+        return tempoRecuperacao / 1e6;
+    }
+
+    private static void leTudo(FileChannel canal, ByteBuffer destino) throws IOException {
+        while (destino.hasRemaining()) {
+            if (canal.read(destino) < 0) {
+                throw new IOException("Fim de arquivo inesperado");
+            }
+        }
+        destino.flip();
+    }
+
+    private static void escreveTudo(FileChannel canal, ByteBuffer origem, long pos) throws IOException {
+        while (origem.hasRemaining()) {
+            pos += canal.write(origem, pos);
+        }
+    }
+}
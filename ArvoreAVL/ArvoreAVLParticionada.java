@@ -0,0 +1,335 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Classe que divide o espaço de chaves em faixas (partições), cada uma guardada em uma
+ * ArvoreAVL independente com a sua própria trava. Inserções em partições diferentes
+ * acontecem em paralelo, em vez de todas disputarem a raiz de uma única árvore.
+ *
+ * A partição i guarda as chaves k com limites[i-1] <= k < limites[i]. Quando uma partição
+ * fica com muito mais nodos que a média, os limites são recalculados pelos quantis das chaves e
+ * as partições são reconstruídas; durante esse rebalanceamento todas as operações esperam.
+ * Depois de um rebalanceamento (ou de uma tentativa inútil, em que os limites não mudariam ou a
+ * partição grande tem uma única chave) o próximo só acontece quando o total de nodos dobrar,
+ * então o custo O(n) de reconstruir é amortizado pelas inserções.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class ArvoreAVLParticionada {
+
+    // Uma partição só é considerada desbalanceada acima deste tamanho
+    private static final int TAMANHO_MINIMO_REBALANCEAMENTO = 1024;
+    // Crescimento do total de nodos exigido entre dois rebalanceamentos automáticos
+    private static final int FATOR_CRESCIMENTO = 2;
+
+    // Atributos da árvore particionada
+    private final ArvoreAVL[] particoes;
+    private final ReentrantLock[] travas; //uma trava por partição
+    private final ReentrantReadWriteLock travaLimites; //escrita somente no rebalanceamento
+    private final ArvoreAVL.DuplicatePolicy policy;
+    private final int fatorDesbalanceio; //tamanho máximo de uma partição em relação à média
+    private int[] limites; //início das partições 1..n-1, em ordem crescente
+    private int rebalanceamentos; //quantas vezes os limites foram recalculados
+    private long proximoRebalanceamento; //total de nodos a partir do qual add() volta a verificar o desbalanceio
+
+    /**
+     * Método construtor da classe ArvoreAVLParticionada.
+     * Os limites iniciais dividem todos os inteiros em faixas de mesmo tamanho.
+     * @param numParticoes Número de partições (normalmente o número de núcleos).
+     * @param policy Política para elementos repetidos de todas as partições.
+     */
+    public ArvoreAVLParticionada(int numParticoes, ArvoreAVL.DuplicatePolicy policy) {
+        if (numParticoes <= 0) {
+            throw new IllegalArgumentException("Numero de particoes invalido: " + numParticoes);
+        }
+        this.policy = policy;
+        fatorDesbalanceio = 2;
+        particoes = new ArvoreAVL[numParticoes];
+        travas = new ReentrantLock[numParticoes];
+        for (int i = 0; i < numParticoes; i++) {
+            particoes[i] = new ArvoreAVL(policy);
+            travas[i] = new ReentrantLock();
+        }
+        travaLimites = new ReentrantReadWriteLock();
+        limites = new int[numParticoes - 1];
+        long passo = (1L << 32) / numParticoes;
+        for (int i = 1; i < numParticoes; i++) {
+            limites[i - 1] = (int) (Integer.MIN_VALUE + passo * i);
+        }
+    }
+
+    /**
+     * Método que retorna a partição de uma chave: o número de limites menores ou iguais a ela.
+     * @param element Chave.
+     * @return Índice da partição.
+     */
+    private int particao(int element) {
+        int ini = 0;
+        int fim = limites.length;
+        while (ini < fim) {
+            int meio = (ini + fim) >>> 1;
+            if (limites[meio] <= element) {
+                ini = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return ini;
+    }
+
+    /**
+     * Método que adiciona um elemento. Pode ser chamado por várias threads ao mesmo tempo.
+     * @param element Elemento a ser adicionado.
+     */
+    public void add(int element) {
+        boolean desbalanceada;
+        travaLimites.readLock().lock();
+        try {
+            int p = particao(element);
+            travas[p].lock();
+            try {
+                particoes[p].add(element);
+                long total = totalNodos();
+                desbalanceada = total >= proximoRebalanceamento && particoes[p].nodeCount() > limiteParticao(total);
+            } finally {
+                travas[p].unlock();
+            }
+        } finally {
+            travaLimites.readLock().unlock();
+        }
+        if (desbalanceada) {
+            rebalanceia(false);
+        }
+    }
+
+    /**
+     * Método que verifica se um elemento está ou não na árvore.
+     * @param element Elemento a ser buscado.
+     * @return Boolean "true" se o elemento está na árvore, caso contrário "false".
+     */
+    public boolean contains(int element) {
+        travaLimites.readLock().lock();
+        try {
+            int p = particao(element);
+            travas[p].lock();
+            try {
+                return particoes[p].contains(element);
+            } finally {
+                travas[p].unlock();
+            }
+        } finally {
+            travaLimites.readLock().unlock();
+        }
+    }
+
+    /**
+     * Método que retorna a quantidade de elementos, somando todas as partições.
+     * @return Quantidade de elementos.
+     */
+    public int size() {
+        travaLimites.readLock().lock();
+        try {
+            int total = 0;
+            for (int i = 0; i < particoes.length; i++) {
+                travas[i].lock();
+                try {
+                    total += particoes[i].size();
+                } finally {
+                    travas[i].unlock();
+                }
+            }
+            return total;
+        } finally {
+            travaLimites.readLock().unlock();
+        }
+    }
+
+    /**
+     * Método que verifica se a árvore está vazia.
+     * @return Boolean "true" se a árvore esteja vazia e caso contrário "false".
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Método que esvazia todas as partições.
+     */
+    public void clear() {
+        travaLimites.writeLock().lock();
+        try {
+            for (ArvoreAVL particao : particoes) {
+                particao.clear();
+            }
+        } finally {
+            travaLimites.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Método que retorna uma lista encadeada com todos os elementos na ordem do caminhamento central.
+     * @return Lista encadeada.
+     */
+    public LinkedListOfInteger positionsCentral() {
+        return positionsCentral(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Método que retorna uma lista encadeada com os elementos no intervalo fechado [lo, hi],
+     * em ordem. As partições envolvidas ficam travadas juntas (em ordem crescente de índice),
+     * então o resultado é um retrato consistente delas.
+     * @param lo Menor elemento do intervalo.
+     * @param hi Maior elemento do intervalo.
+     * @return Lista encadeada.
+     */
+    public LinkedListOfInteger positionsCentral(int lo, int hi) {
+        LinkedListOfInteger res = new LinkedListOfInteger();
+        if (lo > hi) {
+            return res;
+        }
+        travaLimites.readLock().lock();
+        try {
+            int primeira = particao(lo);
+            int ultima = particao(hi);
+            for (int i = primeira; i <= ultima; i++) {
+                travas[i].lock();
+            }
+            try {
+                // as partições são faixas disjuntas e crescentes, basta concatenar
+                for (int i = primeira; i <= ultima; i++) {
+                    particoes[i].positionsCentral(lo, hi, res);
+                }
+            } finally {
+                for (int i = primeira; i <= ultima; i++) {
+                    travas[i].unlock();
+                }
+            }
+        } finally {
+            travaLimites.readLock().unlock();
+        }
+        return res;
+    }
+
+    /**
+     * Método que retorna o número de partições.
+     * @return Número de partições.
+     */
+    public int getNumParticoes() {
+        return particoes.length;
+    }
+
+    /**
+     * Método que retorna quantas vezes os limites das partições foram recalculados.
+     * @return Número de rebalanceamentos.
+     */
+    public int getRebalanceamentos() {
+        travaLimites.readLock().lock();
+        try {
+            return rebalanceamentos;
+        } finally {
+            travaLimites.readLock().unlock();
+        }
+    }
+
+    /**
+     * Método que recalcula os limites das partições pelos quantis das chaves atuais. Notação O: O(n).
+     */
+    public void rebalance() {
+        rebalanceia(true);
+    }
+
+    /**
+     * Método que soma os nodos de todas as partições. O desbalanceio é medido em nodos, e não
+     * em size(), porque é o número de nodos que determina a altura e o custo de uma partição
+     * (na política MULTISET uma chave repetida não cria nodo). Deve ser chamado com a trava
+     * de leitura dos limites.
+     */
+    private long totalNodos() {
+        long total = 0;
+        for (ArvoreAVL particao : particoes) {
+            total += particao.nodeCount(); // leitura sem trava, só uma estimativa
+        }
+        return total;
+    }
+
+    /**
+     * Método que retorna o número de nodos a partir do qual uma partição é considerada desbalanceada.
+     * @param total Total de nodos de todas as partições.
+     */
+    private long limiteParticao(long total) {
+        return Math.max(TAMANHO_MINIMO_REBALANCEAMENTO, fatorDesbalanceio * (total / particoes.length));
+    }
+
+    /**
+     * Método que reconstrói as partições com novos limites.
+     * @param forcado Se false, só rebalanceia se o total de nodos já cresceu o suficiente desde o
+     *                último rebalanceamento e se ainda houver partição desbalanceada com mais de
+     *                uma chave (outra thread pode ter rebalanceado antes).
+     */
+    private void rebalanceia(boolean forcado) {
+        travaLimites.writeLock().lock();
+        try {
+            if (particoes.length == 1) {
+                return;
+            }
+            long total = totalNodos();
+            if (!forcado) {
+                if (total < proximoRebalanceamento) {
+                    return;
+                }
+                long limite = limiteParticao(total);
+                boolean desbalanceada = false;
+                for (ArvoreAVL particao : particoes) {
+                    // uma partição com uma única chave (repetida) não diminui mudando os limites
+                    desbalanceada |= particao.nodeCount() > limite && !particao.getSmallest().equals(particao.getLargest());
+                }
+                if (!desbalanceada) {
+                    proximoRebalanceamento = FATOR_CRESCIMENTO * total;
+                    return;
+                }
+            }
+            proximoRebalanceamento = FATOR_CRESCIMENTO * total;
+            // junta os nodos de todas as partições, que já estão em ordem
+            int n = (int) total;
+            int[] chaves = new int[n];
+            int[] ocorrencias = new int[n];
+            int pos = 0;
+            for (ArvoreAVL particao : particoes) {
+                int m = particao.nodeCount();
+                int[] c = new int[m];
+                int[] o = new int[m];
+                particao.exportaNodos(c, o);
+                System.arraycopy(c, 0, chaves, pos, m);
+                System.arraycopy(o, 0, ocorrencias, pos, m);
+                pos += m;
+            }
+            if (n == 0) {
+                return;
+            }
+            // novos limites nos quantis; chaves repetidas podem deixar partições vazias
+            int[] novos = new int[particoes.length - 1];
+            for (int i = 1; i < particoes.length; i++) {
+                novos[i - 1] = chaves[(int) ((long) n * i / particoes.length)];
+            }
+            if (Arrays.equals(novos, limites)) {
+                return; // as chaves repetidas já ocupam os quantis: reconstruir não mudaria nada
+            }
+            int ini = 0;
+            for (int i = 0; i < particoes.length; i++) {
+                int fim = ini;
+                while (fim < n && (i == novos.length || chaves[fim] < novos[i])) {
+                    fim++;
+                }
+                particoes[i] = ArvoreAVL.fromSorted(Arrays.copyOfRange(chaves, ini, fim),
+                        Arrays.copyOfRange(ocorrencias, ini, fim), policy);
+                ini = fim;
+            }
+            limites = novos;
+            rebalanceamentos++;
+        } finally {
+            travaLimites.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Classe que implementa uma árvore AVL de chaves inteiras em que cada nodo guarda o agregado
+ * (soma, mínimo, máximo, contagem, ...) da sua subárvore, calculado por um monoide informado
+ * pelo usuário. As chaves ficam em uma ArvoreAVL; o agregado é recalculado pelo gancho
+ * atualizaNodo, no caminho da inserção e dentro das rotações da própria ArvoreAVL, o que
+ * permite consultar o agregado de qualquer faixa de chaves em O(log(n)).
+ * Para agregados do tipo long sem boxing, ver ArvoreAgregadaLong.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ * @param <A> Tipo do agregado.
+ */
+
+public class ArvoreAgregada<A> {
+    /**
+     * Interface de um monoide: combina deve ser associativa e identidade deve ser
+     * o elemento neutro de combina. Não precisa ser comutativa: os valores são sempre
+     * combinados na ordem crescente das chaves.
+     * @param <A> Tipo do agregado.
+     */
+    public interface Monoide<A> {
+        A identidade();
+        A combina(A x, A y);
+        A unitario(int chave); //agregado de uma única chave
+    }
+
+    /**
+     * Classe que implementa o nodo da árvore.
+    */
+    private static final class NodoAgregado<A> extends ArvoreAVL.Node {
+
+        private A agregado; //agregado da subárvore
+
+        /**
+         * Método construtor da classe NodoAgregado.
+         * @param element Chave a ser armazenada no nodo.
+         * @param agregado Agregado da chave.
+         */
+        public NodoAgregado(int element, A agregado) {
+            super(element);
+            this.agregado = agregado;
+        }
+    }
+
+    /**
+     * ArvoreAVL que cria nodos com agregado e o mantém pelo monoide.
+     */
+    private static final class Arvore<A> extends ArvoreAVL {
+
+        private final Monoide<A> monoide;
+
+        public Arvore(Monoide<A> monoide) {
+            this.monoide = monoide;
+        }
+
+        @Override
+        Node criaNodo(Integer element) {
+            return new NodoAgregado<>(element, monoide.unitario(element));
+        }
+
+        @Override
+        void atualizaNodo(Node n) {
+            A res = monoide.combina(agregado(n.left), monoide.unitario(n.element));
+            nodo(n).agregado = monoide.combina(res, agregado(n.right));
+        }
+
+        private A agregado(Node n) {
+            return (n == null) ? monoide.identidade() : nodo(n).agregado;
+        }
+
+        @SuppressWarnings("unchecked")
+        private NodoAgregado<A> nodo(Node n) {
+            return (NodoAgregado<A>) n;
+        }
+    }
+
+    // Atributos da árvore
+    private final Monoide<A> monoide; //operação de agregação
+    private final Arvore<A> arvore; //chaves, com o agregado de cada subárvore
+
+    /**
+     * Método construtor da classe ArvoreAgregada.
+     * @param monoide Operação de agregação.
+     */
+    public ArvoreAgregada(Monoide<A> monoide) {
+        if (monoide == null) {
+            throw new IllegalArgumentException("Monoide nulo");
+        }
+        this.monoide = monoide;
+        arvore = new Arvore<>(monoide);
+    }
+
+    /**
+     * Método que esvazia a árvore.
+     */
+    public void clear() {
+        arvore.clear();
+    }
+
+    /**
+     * Método que verifica se a árvore está vazia.
+     * @return Boolean "true" se a árvore esteja vazia e caso contrário "false".
+     */
+    public boolean isEmpty() {
+        return arvore.isEmpty();
+    }
+
+    /**
+     * Método que retorna a quantidade de nodos na árvore.
+     * @return Integer count.
+     */
+    public int size() {
+        return arvore.size();
+    }
+
+    /**
+     * Método que retorna a altura da árvore. Notação O: O(1).
+     * @return Altura da árvore (-1 se estiver vazia).
+     */
+    public int height() {
+        return arvore.height();
+    }
+
+    /**
+     * Método que adiciona uma chave na árvore. Notação O: O(log(n)).
+     * @param element Chave a ser adicionada.
+     */
+    public void add(int element) {
+        arvore.add(element);
+    }
+
+    /**
+     * Método que retorna o agregado de todas as chaves. Notação O: O(1).
+     * @return Agregado da árvore.
+     */
+    public A aggregate() {
+        return arvore.agregado(arvore.raiz());
+    }
+
+    /**
+     * Método que retorna o agregado das chaves no intervalo fechado [lo, hi]. Notação O: O(log(n)).
+     * @param lo Menor chave da faixa.
+     * @param hi Maior chave da faixa.
+     * @return Agregado da faixa (identidade se a faixa estiver vazia).
+     */
+    public A aggregate(int lo, int hi) {
+        ArvoreAVL.Node n = arvore.raiz();
+        // desce até o primeiro nodo dentro da faixa, onde os caminhos de lo e hi se separam
+        while (n != null && (n.element < lo || n.element > hi)) {
+            n = (n.element < lo) ? n.right : n.left;
+        }
+        if (n == null) {
+            return monoide.identidade();
+        }
+        A res = monoide.combina(aPartirDe(n.left, lo), monoide.unitario(n.element));
+        return monoide.combina(res, ate(n.right, hi));
+    }
+
+    /**
+     * Método que agrega as chaves maiores ou iguais a lo de uma subárvore.
+     */
+    private A aPartirDe(ArvoreAVL.Node n, int lo) {
+        if (n == null) {
+            return monoide.identidade();
+        }
+        if (n.element < lo) {
+            return aPartirDe(n.right, lo);
+        }
+        A res = monoide.combina(aPartirDe(n.left, lo), monoide.unitario(n.element));
+        return monoide.combina(res, arvore.agregado(n.right));
+    }
+
+    /**
+     * Método que agrega as chaves menores ou iguais a hi de uma subárvore.
+     */
+    private A ate(ArvoreAVL.Node n, int hi) {
+        if (n == null) {
+            return monoide.identidade();
+        }
+        if (n.element > hi) {
+            return ate(n.left, hi);
+        }
+        A res = monoide.combina(arvore.agregado(n.left), monoide.unitario(n.element));
+        return monoide.combina(res, ate(n.right, hi));
+    }
+}
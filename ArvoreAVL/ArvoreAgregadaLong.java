@@ -0,0 +1,197 @@
+/**
+ * Versão de ArvoreAgregada com agregado do tipo long primitivo, sem boxing.
+ * Já oferece os monoides de soma, mínimo, máximo e contagem.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class ArvoreAgregadaLong {
+    /**
+     * Interface de um monoide sobre long: combina deve ser associativa e identidade deve ser
+     * o elemento neutro de combina.
+     */
+    public interface MonoideLong {
+        long identidade();
+        long combina(long x, long y);
+        long unitario(int chave); //agregado de uma única chave
+    }
+
+    public static final MonoideLong SOMA = new MonoideLong() {
+        public long identidade() { return 0L; }
+        public long combina(long x, long y) { return x + y; }
+        public long unitario(int chave) { return chave; }
+    };
+
+    public static final MonoideLong MINIMO = new MonoideLong() {
+        public long identidade() { return Long.MAX_VALUE; }
+        public long combina(long x, long y) { return Math.min(x, y); }
+        public long unitario(int chave) { return chave; }
+    };
+
+    public static final MonoideLong MAXIMO = new MonoideLong() {
+        public long identidade() { return Long.MIN_VALUE; }
+        public long combina(long x, long y) { return Math.max(x, y); }
+        public long unitario(int chave) { return chave; }
+    };
+
+    public static final MonoideLong CONTAGEM = new MonoideLong() {
+        public long identidade() { return 0L; }
+        public long combina(long x, long y) { return x + y; }
+        public long unitario(int chave) { return 1L; }
+    };
+
+    /**
+     * Classe que implementa o nodo da árvore.
+    */
+    private static final class NodoAgregado extends ArvoreAVL.Node {
+
+        private long agregado; //agregado da subárvore
+
+        /**
+         * Método construtor da classe NodoAgregado.
+         * @param element Chave a ser armazenada no nodo.
+         * @param agregado Agregado da chave.
+         */
+        public NodoAgregado(int element, long agregado) {
+            super(element);
+            this.agregado = agregado;
+        }
+    }
+
+    /**
+     * ArvoreAVL que cria nodos com agregado e o mantém pelo monoide, como em ArvoreAgregada.
+     */
+    private static final class Arvore extends ArvoreAVL {
+
+        private final MonoideLong monoide;
+
+        public Arvore(MonoideLong monoide) {
+            this.monoide = monoide;
+        }
+
+        @Override
+        Node criaNodo(Integer element) {
+            return new NodoAgregado(element, monoide.unitario(element));
+        }
+
+        @Override
+        void atualizaNodo(Node n) {
+            long res = monoide.combina(agregado(n.left), monoide.unitario(n.element));
+            ((NodoAgregado) n).agregado = monoide.combina(res, agregado(n.right));
+        }
+
+        private long agregado(Node n) {
+            return (n == null) ? monoide.identidade() : ((NodoAgregado) n).agregado;
+        }
+    }
+
+    // Atributos da árvore
+    private final MonoideLong monoide; //operação de agregação
+    private final Arvore arvore; //chaves, com o agregado de cada subárvore
+
+    /**
+     * Método construtor da classe ArvoreAgregadaLong.
+     * @param monoide Operação de agregação.
+     */
+    public ArvoreAgregadaLong(MonoideLong monoide) {
+        if (monoide == null) {
+            throw new IllegalArgumentException("Monoide nulo");
+        }
+        this.monoide = monoide;
+        arvore = new Arvore(monoide);
+    }
+
+    /**
+     * Método que esvazia a árvore.
+     */
+    public void clear() {
+        arvore.clear();
+    }
+
+    /**
+     * Método que verifica se a árvore está vazia.
+     * @return Boolean "true" se a árvore esteja vazia e caso contrário "false".
+     */
+    public boolean isEmpty() {
+        return arvore.isEmpty();
+    }
+
+    /**
+     * Método que retorna a quantidade de nodos na árvore.
+     * @return Integer count.
+     */
+    public int size() {
+        return arvore.size();
+    }
+
+    /**
+     * Método que retorna a altura da árvore. Notação O: O(1).
+     * @return Altura da árvore (-1 se estiver vazia).
+     */
+    public int height() {
+        return arvore.height();
+    }
+
+    /**
+     * Método que adiciona uma chave na árvore. Notação O: O(log(n)).
+     * @param element Chave a ser adicionada.
+     */
+    public void add(int element) {
+        arvore.add(element);
+    }
+
+    /**
+     * Método que retorna o agregado de todas as chaves. Notação O: O(1).
+     * @return Agregado da árvore.
+     */
+    public long aggregate() {
+        return arvore.agregado(arvore.raiz());
+    }
+
+    /**
+     * Método que retorna o agregado das chaves no intervalo fechado [lo, hi]. Notação O: O(log(n)).
+     * @param lo Menor chave da faixa.
+     * @param hi Maior chave da faixa.
+     * @return Agregado da faixa (identidade se a faixa estiver vazia).
+     */
+    public long aggregate(int lo, int hi) {
+        ArvoreAVL.Node n = arvore.raiz();
+        // desce até o primeiro nodo dentro da faixa, onde os caminhos de lo e hi se separam
+        while (n != null && (n.element < lo || n.element > hi)) {
+            n = (n.element < lo) ? n.right : n.left;
+        }
+        if (n == null) {
+            return monoide.identidade();
+        }
+        long res = monoide.combina(aPartirDe(n.left, lo), monoide.unitario(n.element));
+        return monoide.combina(res, ate(n.right, hi));
+    }
+
+    /**
+     * Método que agrega as chaves maiores ou iguais a lo de uma subárvore.
+     */
+    private long aPartirDe(ArvoreAVL.Node n, int lo) {
+        if (n == null) {
+            return monoide.identidade();
+        }
+        if (n.element < lo) {
+            return aPartirDe(n.right, lo);
+        }
+        long res = monoide.combina(aPartirDe(n.left, lo), monoide.unitario(n.element));
+        return monoide.combina(res, arvore.agregado(n.right));
+    }
+
+    /**
+     * Método que agrega as chaves menores ou iguais a hi de uma subárvore.
+     */
+    private long ate(ArvoreAVL.Node n, int hi) {
+        if (n == null) {
+            return monoide.identidade();
+        }
+        if (n.element > hi) {
+            return ate(n.left, hi);
+        }
+        long res = monoide.combina(arvore.agregado(n.left), monoide.unitario(n.element));
+        return monoide.combina(res, ate(n.right, hi));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Classe que implementa uma versão imutável e somente leitura da ArvoreAVL.
+ * Os elementos ficam em um vetor contíguo no layout de Eytzinger (a raiz na posição 1 e os
+ * filhos do nodo k nas posições 2k e 2k+1), de modo que a busca percorre a memória de forma
+ * previsível em vez de seguir referências espalhadas pelo heap.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class ArvoreCongelada {
+
+    // Atributos da árvore congelada
+    private final int[] elementos; //layout de Eytzinger, a posição 0 não é usada
+    private final int count; //contagem do número de elementos
+
+    /**
+     * Método construtor da classe ArvoreCongelada.
+     * @param ordenados Elementos em ordem crescente.
+     */
+    ArvoreCongelada(int[] ordenados) {
+        count = ordenados.length;
+        elementos = new int[count + 1];
+        montaEytzinger(ordenados, 0, 1);
+    }
+
+    /**
+     * Método que distribui o vetor ordenado no layout de Eytzinger, na ordem do caminhamento central.
+     * @param ordenados Elementos em ordem crescente.
+     * @param i Próximo elemento do vetor ordenado a ser copiado.
+     * @param k Posição atual no layout de Eytzinger.
+     * @return Próximo elemento do vetor ordenado a ser copiado.
+     */
+    private int montaEytzinger(int[] ordenados, int i, int k) {
+        if (k <= count) {
+            i = montaEytzinger(ordenados, i, 2 * k);
+            elementos[k] = ordenados[i++];
+            i = montaEytzinger(ordenados, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Método que verifica se a árvore está vazia.
+     * @return Boolean "true" se a árvore esteja vazia e caso contrário "false".
+     */
+    public boolean isEmpty() {
+        return (count == 0);
+    }
+
+    /**
+     * Método que retorna a quantidade de elementos na árvore.
+     * @return Integer count.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Método que estima a memória ocupada pela árvore congelada: o objeto e o vetor de int,
+     * sem nenhum Integer. Notação O: O(1).
+     * @return Estimativa em bytes.
+     */
+    public long memoryFootprint() {
+        return 24 + ((16 + 4L * elementos.length + 7) & ~7L);
+    }
+
+    /**
+     * Método que verifica se um elemento está ou não na árvore.
+     * A descida não tem desvios dependentes da comparação: o próximo índice é calculado
+     * aritmeticamente a partir do sinal da diferença. Notação O: O(log(n)).
+     * @param element Elemento a ser buscado.
+     * @return Boolean "true" se o elemento está na árvore, caso contrário "false".
+     */
+    public boolean contains(int element) {
+        int k = 1;
+        while (k <= count) {
+            // soma 1 (vai para a direita) quando elementos[k] < element
+            k = 2 * k + (int) (((long) elementos[k] - element) >>> 63);
+        }
+        // desfaz as descidas à direita feitas depois do último "maior ou igual" encontrado
+        k >>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k != 0 && elementos[k] == element;
+    }
+
+    /**
+     * Método que gera uma nova ArvoreAVL mutável com os mesmos elementos. Notação O: O(n).
+     * @return Árvore AVL balanceada.
+     */
+    public ArvoreAVL thaw() {
+        int[] ordenados = new int[count];
+        thawAux(ordenados, 0, 1);
+        return ArvoreAVL.fromSorted(ordenados);
+    }
+
+    /**
+     * Método que copia os elementos para o vetor na ordem do caminhamento central.
+     * @param res Vetor de destino.
+     * @param i Próxima posição livre do vetor.
+     * @param k Posição atual no layout de Eytzinger.
+     * @return Próxima posição livre do vetor.
+     */
+    private int thawAux(int[] res, int i, int k) {
+        if (k <= count) {
+            i = thawAux(res, i, 2 * k);
+            res[i++] = elementos[k];
+            i = thawAux(res, i, 2 * k + 1);
+        }
+        return i;
+    }
+}
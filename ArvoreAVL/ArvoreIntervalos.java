@@ -0,0 +1,162 @@
+/**
+ * Classe que implementa uma árvore AVL de intervalos fechados [inicio, fim].
+ * Cada nodo guarda, além do intervalo, o maior fim da sua subárvore (maxFim), o que
+ * permite descartar subárvores inteiras nas consultas de sobreposição.
+ * Os intervalos ficam em uma ArvoreAVL ordenada pelo início; o maxFim é recalculado pelo
+ * gancho atualizaNodo, então a inserção e as rotações são as da própria ArvoreAVL.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class ArvoreIntervalos {
+    /**
+     * Interface que recebe os intervalos encontrados por uma consulta, um de cada vez,
+     * em ordem crescente de início.
+     */
+    public interface VisitanteIntervalo {
+        void visita(int inicio, int fim);
+    }
+
+    /**
+     * Classe que implementa o nodo da árvore: o elemento do Node é o início do intervalo.
+    */
+    private static final class NodoIntervalo extends ArvoreAVL.Node {
+
+        private final int fim;
+        private int maxFim; //maior fim da subárvore
+
+        /**
+         * Método construtor da classe NodoIntervalo.
+         * @param inicio Início do intervalo.
+         * @param fim Fim do intervalo.
+         */
+        public NodoIntervalo(int inicio, int fim) {
+            super(inicio);
+            this.fim = fim;
+            maxFim = fim;
+        }
+    }
+
+    /**
+     * ArvoreAVL que cria nodos de intervalo e mantém o maxFim. Inícios repetidos são
+     * permitidos (política ALLOW), pois intervalos diferentes podem começar no mesmo ponto.
+     */
+    private static final class Arvore extends ArvoreAVL {
+
+        private int fimInserido; //fim do intervalo da inserção em andamento
+
+        @Override
+        Node criaNodo(Integer element) {
+            return new NodoIntervalo(element, fimInserido);
+        }
+
+        @Override
+        void atualizaNodo(Node n) {
+            NodoIntervalo i = (NodoIntervalo) n;
+            int max = i.fim;
+            if (n.left != null && ((NodoIntervalo) n.left).maxFim > max) {
+                max = ((NodoIntervalo) n.left).maxFim;
+            }
+            if (n.right != null && ((NodoIntervalo) n.right).maxFim > max) {
+                max = ((NodoIntervalo) n.right).maxFim;
+            }
+            i.maxFim = max;
+        }
+    }
+
+    // Atributos da árvore
+    private final Arvore arvore; //intervalos ordenados pelo início
+
+    /**
+     * Método construtor da classe ArvoreIntervalos.
+     * Cria uma árvore vazia.
+     */
+    public ArvoreIntervalos() {
+        arvore = new Arvore();
+    }
+
+    /**
+     * Método que esvazia a árvore.
+     */
+    public void clear() {
+        arvore.clear();
+    }
+
+    /**
+     * Método que verifica se a árvore está vazia.
+     * @return Boolean "true" se a árvore esteja vazia e caso contrário "false".
+     */
+    public boolean isEmpty() {
+        return arvore.isEmpty();
+    }
+
+    /**
+     * Método que retorna a quantidade de intervalos na árvore.
+     * @return Integer count.
+     */
+    public int size() {
+        return arvore.size();
+    }
+
+    /**
+     * Método que retorna a altura da árvore. Notação O: O(1).
+     * @return Altura da árvore (-1 se estiver vazia).
+     */
+    public int height() {
+        return arvore.height();
+    }
+
+    /**
+     * Método que adiciona um intervalo na árvore. Notação O: O(log(n)).
+     * @param inicio Início do intervalo.
+     * @param fim Fim do intervalo.
+     */
+    public void add(int inicio, int fim) {
+        if (inicio > fim) {
+            throw new IllegalArgumentException("Intervalo invalido: [" + inicio + ", " + fim + "]");
+        }
+        arvore.fimInserido = fim;
+        arvore.add(inicio);
+    }
+
+    /**
+     * Método que percorre os intervalos que se sobrepõem a [a, b].
+     * Cada intervalo encontrado custa no máximo uma descida, e as subárvores sem nenhum
+     * intervalo encontrado são descartadas pelo maxFim ou pelo início.
+     * Notação O: O(min(n, (k + 1) log(n))) para k intervalos encontrados.
+     * @param a Início da consulta.
+     * @param b Fim da consulta.
+     * @param visitante Recebe cada intervalo encontrado.
+     */
+    public void overlaps(int a, int b, VisitanteIntervalo visitante) {
+        if (a > b) {
+            throw new IllegalArgumentException("Intervalo invalido: [" + a + ", " + b + "]");
+        }
+        overlapsAux((NodoIntervalo) arvore.raiz(), a, b, visitante);
+    }
+
+    /**
+     * Método que percorre os intervalos que contêm o ponto p.
+     * Notação O: O(min(n, (k + 1) log(n))) para k intervalos encontrados.
+     * @param p Ponto consultado.
+     * @param visitante Recebe cada intervalo encontrado.
+     */
+    public void stab(int p, VisitanteIntervalo visitante) {
+        overlapsAux((NodoIntervalo) arvore.raiz(), p, p, visitante);
+    }
+
+    private void overlapsAux(NodoIntervalo n, int a, int b, VisitanteIntervalo visitante) {
+        if (n == null || n.maxFim < a) {
+            return; // nenhum intervalo da subárvore chega até a
+        }
+        overlapsAux((NodoIntervalo) n.left, a, b, visitante);
+        int inicio = n.element;
+        if (inicio > b) {
+            return; // este nodo e a subárvore da direita começam depois de b
+        }
+        if (n.fim >= a) {
+            visitante.visita(inicio, n.fim);
+        }
+        overlapsAux((NodoIntervalo) n.right, a, b, visitante);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Classe que implementa uma cache de tamanho fixo para os resultados de ArvoreAVL.contains.
+ * Cada chave é mapeada para uma única posição de uma tabela (endereçamento direto); uma nova
+ * chave simplesmente sobrescreve a anterior. Guarda tanto acertos (elemento presente) quanto
+ * faltas (elemento ausente), sem criar objetos Integer.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class CacheDeBusca {
+
+    // Estados de uma posição da tabela
+    private static final byte VAZIO = 0;
+    private static final byte PRESENTE = 1;
+    private static final byte AUSENTE = 2;
+
+    // Atributos da cache
+    private final int[] chaves;
+    private final byte[] estados;
+    private final int shift; //deslocamento usado no hash multiplicativo
+    private long hits; //consultas respondidas pela cache
+    private long misses; //consultas que precisaram descer na árvore
+
+    /**
+     * Método construtor da classe CacheDeBusca.
+     * @param capacidade Número mínimo de posições, arredondado para a próxima potência de 2.
+     */
+    public CacheDeBusca(int capacidade) {
+        if (capacidade <= 0 || capacidade > (1 << 30)) {
+            throw new IllegalArgumentException("Capacidade invalida: " + capacidade);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(capacidade - 1);
+        chaves = new int[1 << bits];
+        estados = new byte[1 << bits];
+        shift = 32 - bits;
+    }
+
+    /**
+     * Método que calcula a posição da chave na tabela.
+     * @param chave Chave.
+     * @return Posição na tabela.
+     */
+    private int posicao(int chave) {
+        if (shift == 32)
+            return 0;
+        return (chave * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Método que consulta a cache e atualiza as métricas.
+     * @param chave Chave buscada.
+     * @return 1 se a chave está na árvore, 0 se não está, -1 se a cache não sabe.
+     */
+    int consulta(int chave) {
+        int p = posicao(chave);
+        if (estados[p] != VAZIO && chaves[p] == chave) {
+            hits++;
+            return estados[p] == PRESENTE ? 1 : 0;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Método que guarda o resultado de uma busca na árvore.
+     * @param chave Chave buscada.
+     * @param presente Resultado da busca.
+     */
+    void registra(int chave, boolean presente) {
+        int p = posicao(chave);
+        chaves[p] = chave;
+        estados[p] = presente ? PRESENTE : AUSENTE;
+    }
+
+    /**
+     * Método que descarta o resultado guardado para uma chave. Deve ser chamado sempre
+     * que a árvore for alterada nessa chave.
+     * @param chave Chave alterada.
+     */
+    void invalida(int chave) {
+        int p = posicao(chave);
+        if (chaves[p] == chave) {
+            estados[p] = VAZIO;
+        }
+    }
+
+    /**
+     * Método que esvazia a cache sem zerar as métricas.
+     */
+    void invalidaTudo() {
+        java.util.Arrays.fill(estados, VAZIO);
+    }
+
+    /**
+     * Método que retorna o número de posições da cache.
+     * @return Capacidade.
+     */
+    public int capacity() {
+        return chaves.length;
+    }
+
+    /**
+     * Método que estima a memória ocupada pela cache (objeto e as duas tabelas).
+     * @return Estimativa em bytes.
+     */
+    public long memoryFootprint() {
+        long tabelaChaves = (16 + 4L * chaves.length + 7) & ~7L;
+        long tabelaEstados = (16 + (long) estados.length + 7) & ~7L;
+        return 40 + tabelaChaves + tabelaEstados;
+    }
+
+    /**
+     * Método que retorna o número de consultas respondidas pela cache.
+     * @return Acertos.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Método que retorna o número de consultas que precisaram descer na árvore.
+     * @return Faltas.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Método que retorna a taxa de acerto da cache.
+     * @return Valor entre 0 e 1 (0 se ainda não houve consultas).
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Método que zera as métricas.
+     */
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+    }
+}
@@ -272,6 +272,26 @@ public class LinkedListOfInteger {
         return false;
     }
 
+    /**
+     * Estima a memoria ocupada pela lista, para uma JVM de 64 bits com referencias
+     * comprimidas: o objeto da lista, 24 bytes por nodo e 16 bytes por Integer fora da
+     * faixa -128..127 (os Integer podem ser compartilhados com a arvore que gerou a lista).
+     *
+     * @return estimativa em bytes
+     */
+    public long memoryFootprint() {
+        long bytes = 24;
+        Node aux = head;
+        while (aux != null) {
+            bytes += 24;
+            if (aux.element < -128 || aux.element > 127) {
+                bytes += 16;
+            }
+            aux = aux.next;
+        }
+        return bytes;
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -1,5 +1,18 @@
 // Press Shift twice to open the Search Everywhere dialog and type `show whitespaces`,
 // then press Enter. You can now see whitespace characters in your code.
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
 public class Main {
   public static void main(String[] args) {
     ArvoreAVL b = new ArvoreAVL();
@@ -31,5 +44,548 @@ public class Main {
     System.out.println("Caminhamento central: " +c.positionsCentral().toString());
     System.out.println("---------------------");
     c.GeraDOT();
+
+    for (ArvoreAVL.BalancePolicy politica : ArvoreAVL.BalancePolicy.values()) {
+      ArvoreAVL d = new ArvoreAVL();
+      d.setBalancePolicy(politica);
+      for (int i = 1; i <= 1000; i++) {
+        d.add(i);
+      }
+      System.out.println(politica + " - altura: " + d.height() + ", rotacoes por insercao: " + d.rotationsPerInsert()
+          + ", nodos religados por insercao: " + d.rebuiltNodesPerInsert() + ", reconstrucoes: " + d.getReconstrucoes());
+      if (d.isRebalancePending()) {
+        d.rebalance(); // fim da rajada: a política RELAXED faz todo o balanceamento aqui
+        System.out.println(politica + " - altura depois de rebalance(): " + d.height()
+            + ", nodos religados por insercao: " + d.rebuiltNodesPerInsert());
+      }
+    }
+
+    // freeze().contains contra contains, com acertos e falhas, em tamanhos que cabem na L2, na L3 e só na DRAM
+    medeCongelada("L2", 1 << 15);
+    medeCongelada("L3", 1 << 19);
+    medeCongelada("DRAM", 1 << 22);
+
+    // ArvoreAVLDuravel: snapshot, reaplicação do log e final rasgado; depois o tempo de recuperação de um log grande
+    try {
+      testeDuravel();
+      medeRecuperacao(10000000);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    // PipelineIngestao com várias produtoras, flush() no meio e close() no fim
+    testePipeline(4, 250000);
+
+    // Orçamento de memória: consultas trazem páginas de volta e as despejam de novo sem gravar
+    try {
+      medeDespejo(100000, 1 << 20);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    // ArvoreIntervalos: overlaps e stab conferidos contra uma lista de intervalos percorrida por força bruta
+    testeIntervalos(20000, 20241019L);
+
+    // ArvoreAgregada e ArvoreAgregadaLong: aggregate(lo, hi) conferido contra a dobra das chaves por força bruta
+    testeAgregados(20000, 20241019L);
+
+    // ArvoreAVLParticionada: rebalanceamentos em padrões que antes causavam tempestades, e
+    // ingestão por várias threads conferida em ordem, com a vazão por número de threads
+    testeRebalanceamentos();
+    medeParticionada(1 << 20, 8);
+
+    // Teste diferencial: compara a árvore com um TreeMap (elemento -> ocorrências) em operações aleatórias
+    int operacoes = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    long semente = (args.length > 1) ? Long.parseLong(args[1]) : 20241019L;
+    TesteDiferencial.testeDiferencial(operacoes, semente);
+  }
+
+  /**
+   * Mede o tempo médio de contains na ArvoreAVL e na ArvoreCongelada com n chaves pares,
+   * buscando chaves pares (acertos) e ímpares (falhas) sorteadas. Cada medição é repetida
+   * e só a última conta, para o JIT já ter compilado as buscas.
+   */
+  private static void medeCongelada(String nome, int n) {
+    int[] ordenados = new int[n];
+    for (int i = 0; i < n; i++) {
+      ordenados[i] = 2 * i;
+    }
+    ArvoreAVL arvore = ArvoreAVL.fromSorted(ordenados);
+    ArvoreCongelada congelada = arvore.freeze();
+    int buscas = 1 << 18;
+    int[] acertos = new int[buscas];
+    int[] falhas = new int[buscas];
+    Random r = new Random(n);
+    for (int i = 0; i < buscas; i++) {
+      acertos[i] = 2 * r.nextInt(n);
+      falhas[i] = acertos[i] + 1;
+    }
+    double[] ns = new double[4];
+    int encontrados = 0;
+    for (int repeticao = 0; repeticao < 2; repeticao++) {
+      for (int caso = 0; caso < 4; caso++) {
+        int[] chaves = (caso % 2 == 0) ? acertos : falhas;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < buscas; i++) {
+          if ((caso < 2) ? arvore.contains(chaves[i]) : congelada.contains(chaves[i])) {
+            encontrados++;
+          }
+        }
+        ns[caso] = (double) (System.nanoTime() - inicio) / buscas;
+      }
+    }
+    if (encontrados != 2 * 2 * buscas) {
+      throw new IllegalStateException("Busca divergente: " + encontrados + " acertos");
+    }
+    System.out.printf("%s (%d chaves) - contains: acerto %.1f ns, falha %.1f ns; freeze().contains: acerto %.1f ns, falha %.1f ns%n",
+        nome, n, ns[0], ns[1], ns[2], ns[3]);
+  }
+
+  /**
+   * Grava operações antes e depois de um snapshot, rasga o final do log como numa queda no meio
+   * de uma gravação e confere que a reabertura recupera exatamente as operações completas.
+   * Também confere que um log de geração mais nova que o snapshot ou com cabeçalho estranho
+   * faz a abertura falhar.
+   */
+  private static void testeDuravel() throws IOException {
+    Path diretorio = Files.createTempDirectory("arvoreduravel");
+    Path log = diretorio.resolve("arvore.log");
+    try {
+      ArvoreAVLDuravel d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 100);
+      for (int i = 0; i < 10000; i++) {
+        d.add(i % 5000);
+      }
+      d.snapshot();
+      for (int i = 0; i < 1000; i++) {
+        d.add(i);
+      }
+      d.close();
+      long tamanhoLog = Files.size(log);
+
+      // um registro inteiro com CRC errado e meio registro, como numa queda durante a gravação
+      Files.write(log, new byte[] {1, 0, 0, 0, 7, 0, 0, 0, 0, 1, 0}, StandardOpenOption.APPEND);
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 100);
+      if (d.size() != 11000 || d.getArvore().count(7) != 3 || d.getOperacoesRecuperadas() != 1000
+          || Files.size(log) != tamanhoLog) {
+        throw new IllegalStateException("Recuperacao divergente: size " + d.size() + ", " + d.getOperacoesRecuperadas()
+            + " operacoes, log com " + Files.size(log) + " bytes");
+      }
+      // os registros novos ficam logo depois do último registro válido
+      d.add(-1);
+      d.close();
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 100);
+      if (d.size() != 11001 || !d.contains(-1)) {
+        throw new IllegalStateException("Registro gravado depois da recuperacao se perdeu");
+      }
+      d.close();
+
+      byte[] original = Files.readAllBytes(log);
+      byte[] alterado = original.clone();
+      alterado[11] = 9; // geração 9, mais nova que a do snapshot
+      Files.write(log, alterado);
+      exigeFalha(diretorio);
+      alterado = original.clone();
+      alterado[0] = 'X'; // mágico errado
+      Files.write(log, alterado);
+      exigeFalha(diretorio);
+      alterado = original.clone();
+      alterado[15] = 1; // política REJECT no log, MULTISET no snapshot
+      Files.write(log, alterado);
+      exigeFalha(diretorio);
+      Files.write(log, original);
+      apaga(diretorio);
+
+      // sem snapshot, a política do log vale mesmo que open() receba outra
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 100);
+      d.add(1);
+      d.add(1);
+      d.add(2);
+      d.close();
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.REJECT, 100);
+      if (d.size() != 3 || d.getArvore().getDuplicatePolicy() != ArvoreAVL.DuplicatePolicy.MULTISET) {
+        throw new IllegalStateException("Log reaplicado com outra politica: size " + d.size());
+      }
+      d.snapshot();
+      d.close();
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.REJECT, 100);
+      if (d.size() != 3 || d.getArvore().count(1) != 2) {
+        throw new IllegalStateException("Snapshot perdeu ocorrencias: size " + d.size());
+      }
+      d.close();
+      System.out.println("ArvoreAVLDuravel: snapshot, log, final rasgado e politica gravada recuperados");
+    } finally {
+      apaga(diretorio);
+    }
+  }
+
+  private static void exigeFalha(Path diretorio) throws IOException {
+    try {
+      ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 100).close();
+    } catch (IOException e) {
+      return;
+    }
+    throw new IllegalStateException("Log invalido foi aceito na abertura");
+  }
+
+  /**
+   * Insere n chaves aleatórias numa árvore com orçamento de memória e mede duas rodadas de n
+   * contains. Depois que as subárvores alteradas pelas inserções já foram gravadas, as
+   * consultas só leem páginas: a segunda rodada não pode gravar nada no arquivo de despejo.
+   */
+  private static void medeDespejo(int n, long orcamento) throws IOException {
+    ArvoreAVL arvore = new ArvoreAVL();
+    Path arquivo = Files.createTempFile("arvoreavl", ".despejo");
+    try {
+      arvore.setHeapBudget(orcamento, arquivo);
+      Random r = new Random(n);
+      for (int i = 0; i < n; i++) {
+        arvore.add(r.nextInt(1 << 30));
+      }
+      for (int rodada = 1; rodada <= 2; rodada++) {
+        long gravados = arvore.getBytesGravados();
+        long faltas = arvore.getFaltas();
+        Random q = new Random(-n);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          arvore.contains(q.nextInt(1 << 30));
+        }
+        long ms = (System.nanoTime() - inicio) / 1000000;
+        gravados = arvore.getBytesGravados() - gravados;
+        System.out.printf("Despejo: rodada %d de %d contains com orcamento de %d KB em %d ms, %d paginas lidas, %d bytes gravados%n",
+            rodada, n, orcamento >> 10, ms, arvore.getFaltas() - faltas, gravados);
+        if (rodada == 2 && gravados != 0) {
+          throw new IllegalStateException("Consultas gravaram " + gravados + " bytes no arquivo de despejo");
+        }
+      }
+      arvore.validate();
+    } finally {
+      arvore.disableHeapBudget();
+      Files.deleteIfExists(arquivo);
+    }
+  }
+
+  /**
+   * Grava um log com "operacoes" inserções, sem snapshot, e mede o tempo de reabertura.
+   */
+  private static void medeRecuperacao(int operacoes) throws IOException {
+    Path diretorio = Files.createTempDirectory("arvoreduravel");
+    try {
+      ArvoreAVLDuravel d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 10000);
+      Random r = new Random(operacoes);
+      for (int i = 0; i < operacoes; i++) {
+        d.add(r.nextInt(1 << 16));
+      }
+      d.close();
+      d = ArvoreAVLDuravel.open(diretorio, ArvoreAVL.DuplicatePolicy.MULTISET, 10000);
+      if (d.size() != operacoes) {
+        throw new IllegalStateException("Recuperacao divergente: size " + d.size());
+      }
+      System.out.printf("ArvoreAVLDuravel: %d operacoes do log (%d MB) recuperadas em %.0f ms%n", d.getOperacoesRecuperadas(),
+          Files.size(diretorio.resolve("arvore.log")) >> 20, d.getTempoRecuperacaoMs());
+      d.close();
+    } finally {
+      apaga(diretorio);
+    }
+  }
+
+  private static void apaga(Path diretorio) throws IOException {
+    try (Stream<Path> arquivos = Files.list(diretorio)) {
+      for (Path p : (Iterable<Path>) arquivos::iterator) {
+        Files.delete(p);
+      }
+    }
+    Files.delete(diretorio);
+  }
+
+  /**
+   * Várias threads produtoras entregam chaves ao pipeline (metade delas repetidas entre as
+   * threads) e pedem um flush() no meio. Confere que todos os futuros completam e que, depois
+   * de close(), a árvore tem todas as chaves e respeita as invariantes.
+   */
+  private static void testePipeline(int produtoras, int porProdutora) {
+    ArvoreAVL arvore = new ArvoreAVL(ArvoreAVL.DuplicatePolicy.MULTISET);
+    PipelineIngestao pipeline = new PipelineIngestao(arvore, 1 << 16);
+    List<CompletableFuture<Void>> flushes = new ArrayList<>();
+    Thread[] threads = new Thread[produtoras];
+    long inicio = System.nanoTime();
+    for (int t = 0; t < produtoras; t++) {
+      int id = t;
+      threads[t] = new Thread(() -> {
+        Random r = new Random(id);
+        try {
+          for (int i = 0; i < porProdutora; i++) {
+            // chaves pares são exclusivas da thread, as ímpares se repetem entre elas
+            pipeline.add((i % 2 == 0) ? 2 * (i * produtoras + id) : 2 * r.nextInt(porProdutora) + 1);
+            if (i == porProdutora / 2) {
+              synchronized (flushes) {
+                flushes.add(pipeline.flush());
+              }
+            }
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads[t].start();
+    }
+    try {
+      for (Thread t : threads) {
+        t.join();
+      }
+      for (CompletableFuture<Void> f : flushes) {
+        f.get();
+      }
+      pipeline.close().get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Pipeline falhou", e);
+    }
+    long ms = (System.nanoTime() - inicio) / 1000000;
+    arvore.validate();
+    if (flushes.size() != produtoras || arvore.size() != produtoras * porProdutora) {
+      throw new IllegalStateException("Pipeline divergente: " + flushes.size() + " flushes, size " + arvore.size());
+    }
+    for (int i = 0; i < porProdutora; i += 2) {
+      for (int t = 0; t < produtoras; t++) {
+        if (!arvore.contains(2 * (i * produtoras + t))) {
+          throw new IllegalStateException("Pipeline perdeu a chave " + 2 * (i * produtoras + t));
+        }
+      }
+    }
+    System.out.println("PipelineIngestao: " + produtoras + " produtoras, " + arvore.size() + " elementos em " + ms + " ms, "
+        + pipeline.getLotes() + " lotes (maior " + pipeline.getMaiorLote() + "), " + arvore.getReconstrucoes()
+        + " reconstrucoes por intercalacao");
+  }
+
+  /**
+   * Insere n intervalos sorteados (com inícios repetidos e uma rajada de inícios crescentes, para
+   * passar pelas rotações) e, a cada 1000 inserções, confere overlaps e stab contra uma lista
+   * com todos os intervalos percorrida por força bruta. Confere também que os intervalos chegam
+   * ao visitante em ordem crescente de início.
+   */
+  private static void testeIntervalos(int n, long semente) {
+    Random r = new Random(semente);
+    ArvoreIntervalos arvore = new ArvoreIntervalos();
+    List<int[]> intervalos = new ArrayList<>();
+    int consultas = 0;
+    long inicio = System.nanoTime();
+    for (int i = 1; i <= n; i++) {
+      int ini = (i <= n / 4) ? i : r.nextInt(n);
+      int fim = ini + ((r.nextInt(4) == 0) ? 0 : r.nextInt(200));
+      arvore.add(ini, fim);
+      intervalos.add(new int[] {ini, fim});
+      if (i % 1000 != 0) {
+        continue;
+      }
+      if (arvore.size() != intervalos.size()) {
+        throw new IllegalStateException("ArvoreIntervalos divergente: size " + arvore.size() + " != " + intervalos.size());
+      }
+      for (int q = 0; q < 100; q++, consultas++) {
+        int a = r.nextInt(n + 400) - 200;
+        int b = (q % 2 == 0) ? a : a + r.nextInt(400);
+        List<Long> obtidos = new ArrayList<>();
+        int[] anterior = {Integer.MIN_VALUE};
+        ArvoreIntervalos.VisitanteIntervalo visitante = (x, y) -> {
+          if (x < anterior[0]) {
+            throw new IllegalStateException("ArvoreIntervalos fora de ordem: inicio " + x + " depois de " + anterior[0]);
+          }
+          anterior[0] = x;
+          obtidos.add(((long) x << 32) | y);
+        };
+        if (q % 4 == 0) { // a == b
+          arvore.stab(a, visitante);
+        } else {
+          arvore.overlaps(a, b, visitante);
+        }
+        List<Long> esperados = new ArrayList<>();
+        for (int[] intervalo : intervalos) {
+          if (intervalo[0] <= b && intervalo[1] >= a) {
+            esperados.add(((long) intervalo[0] << 32) | intervalo[1]);
+          }
+        }
+        obtidos.sort(null);
+        esperados.sort(null);
+        if (!obtidos.equals(esperados)) {
+          throw new IllegalStateException("ArvoreIntervalos divergente em [" + a + ", " + b + "] com " + i
+              + " intervalos: " + obtidos.size() + " encontrados, " + esperados.size() + " esperados");
+        }
+      }
+    }
+    long ms = (System.nanoTime() - inicio) / 1000000;
+    System.out.println("ArvoreIntervalos: " + n + " intervalos (altura " + arvore.height() + "), " + consultas
+        + " consultas iguais a forca bruta em " + ms + " ms");
+  }
+
+  // Módulo da composição de funções afins usada como monoide não comutativo
+  private static final long MODULO_AFIM = 1000000007L;
+
+  /**
+   * Monoide não comutativo: cada chave k é a função afim x -> (k + 2)x + k (mod MODULO_AFIM),
+   * guardada como {a, b}, e combina(f, g) aplica f e depois g. Uma árvore que combinasse os
+   * agregados fora da ordem das chaves daria outro resultado.
+   */
+  private static final ArvoreAgregada.Monoide<long[]> AFIM = new ArvoreAgregada.Monoide<long[]>() {
+    public long[] identidade() { return new long[] {1L, 0L}; }
+    public long[] combina(long[] f, long[] g) {
+      return new long[] {g[0] * f[0] % MODULO_AFIM, (g[0] * f[1] + g[1]) % MODULO_AFIM};
+    }
+    public long[] unitario(int chave) { return new long[] {chave + 2L, chave}; }
+  };
+
+  /**
+   * Insere n chaves sorteadas (com repetidas e uma rajada crescente, para passar pelas rotações)
+   * em uma ArvoreAgregada com o monoide AFIM e em ArvoreAgregadaLong com SOMA, MINIMO, MAXIMO e
+   * CONTAGEM. A cada 1000 inserções confere aggregate() e aggregate(lo, hi) contra a dobra, em
+   * ordem crescente, das chaves da faixa em um vetor ordenado.
+   */
+  private static void testeAgregados(int n, long semente) {
+    Random r = new Random(semente);
+    ArvoreAgregadaLong.MonoideLong[] monoides = {ArvoreAgregadaLong.SOMA, ArvoreAgregadaLong.MINIMO,
+        ArvoreAgregadaLong.MAXIMO, ArvoreAgregadaLong.CONTAGEM};
+    ArvoreAgregada<long[]> afim = new ArvoreAgregada<>(AFIM);
+    ArvoreAgregadaLong[] longs = new ArvoreAgregadaLong[monoides.length];
+    for (int m = 0; m < monoides.length; m++) {
+      longs[m] = new ArvoreAgregadaLong(monoides[m]);
+    }
+    int[] chaves = new int[n];
+    int consultas = 0;
+    long inicio = System.nanoTime();
+    for (int i = 1; i <= n; i++) {
+      int chave = (i <= n / 4) ? i : r.nextInt(n) - n / 2;
+      chaves[i - 1] = chave;
+      afim.add(chave);
+      for (ArvoreAgregadaLong arvore : longs) {
+        arvore.add(chave);
+      }
+      if (i % 1000 != 0) {
+        continue;
+      }
+      int[] ordenadas = Arrays.copyOf(chaves, i);
+      Arrays.sort(ordenadas);
+      for (int q = 0; q <= 100; q++, consultas++) {
+        // a última consulta é a árvore inteira, por aggregate()
+        int lo = (q < 100) ? r.nextInt(2 * n) - n : Integer.MIN_VALUE;
+        int hi = (q < 100) ? lo + r.nextInt(n / 2) : Integer.MAX_VALUE;
+        long[] esperado = AFIM.identidade();
+        for (int k : ordenadas) {
+          if (k >= lo && k <= hi) {
+            esperado = AFIM.combina(esperado, AFIM.unitario(k));
+          }
+        }
+        long[] obtido = (q < 100) ? afim.aggregate(lo, hi) : afim.aggregate();
+        if (!Arrays.equals(obtido, esperado)) {
+          throw new IllegalStateException("ArvoreAgregada divergente em [" + lo + ", " + hi + "] com " + i + " chaves: "
+              + Arrays.toString(obtido) + " != " + Arrays.toString(esperado));
+        }
+        for (int m = 0; m < monoides.length; m++) {
+          long esperadoLong = monoides[m].identidade();
+          for (int k : ordenadas) {
+            if (k >= lo && k <= hi) {
+              esperadoLong = monoides[m].combina(esperadoLong, monoides[m].unitario(k));
+            }
+          }
+          long obtidoLong = (q < 100) ? longs[m].aggregate(lo, hi) : longs[m].aggregate();
+          if (obtidoLong != esperadoLong) {
+            throw new IllegalStateException("ArvoreAgregadaLong (monoide " + m + ") divergente em [" + lo + ", " + hi
+                + "] com " + i + " chaves: " + obtidoLong + " != " + esperadoLong);
+          }
+        }
+      }
+    }
+    long ms = (System.nanoTime() - inicio) / 1000000;
+    System.out.println("ArvoreAgregada: " + n + " chaves (altura " + afim.height() + "), " + consultas
+        + " consultas com o monoide afim e com SOMA, MINIMO, MAXIMO e CONTAGEM iguais a forca bruta em " + ms + " ms");
+  }
+
+  /**
+   * Conta os rebalanceamentos automáticos de uma ArvoreAVLParticionada de 4 partições em padrões
+   * de chaves repetidas e crescentes, em cada política de repetidos. Como o próximo rebalanceamento
+   * só acontece quando o total de nodos dobra, nenhum padrão pode passar de log2(n) + 1.
+   */
+  private static void testeRebalanceamentos() {
+    for (ArvoreAVL.DuplicatePolicy politica : new ArvoreAVL.DuplicatePolicy[] {ArvoreAVL.DuplicatePolicy.ALLOW,
+        ArvoreAVL.DuplicatePolicy.MULTISET, ArvoreAVL.DuplicatePolicy.REJECT}) {
+      ArvoreAVLParticionada modulo = new ArvoreAVLParticionada(4, politica);
+      ArvoreAVLParticionada crescente = new ArvoreAVLParticionada(4, politica);
+      ArvoreAVLParticionada unica = new ArvoreAVLParticionada(4, politica);
+      for (int i = 0; i < 300000; i++) {
+        crescente.add(i);
+        if (i < 30000) {
+          modulo.add(i % 3);
+          unica.add(7);
+        }
+      }
+      int[] contagens = {modulo.getRebalanceamentos(), crescente.getRebalanceamentos(), unica.getRebalanceamentos()};
+      // log2(n) + 1 arredondado para baixo
+      int[] limites = {32 - Integer.numberOfLeadingZeros(30000), 32 - Integer.numberOfLeadingZeros(300000),
+          32 - Integer.numberOfLeadingZeros(30000)};
+      for (int j = 0; j < contagens.length; j++) {
+        if (contagens[j] > limites[j]) {
+          throw new IllegalStateException("ArvoreAVLParticionada (" + politica + "): " + contagens[j]
+              + " rebalanceamentos, mais que " + limites[j]);
+        }
+      }
+      System.out.println("ArvoreAVLParticionada (" + politica + ", 4 particoes): " + contagens[0]
+          + " rebalanceamentos com 30000 chaves i % 3, " + contagens[1] + " com 300000 crescentes, "
+          + contagens[2] + " com 30000 iguais");
+    }
+  }
+
+  /**
+   * Várias threads inserem juntas as chaves 0..total-1 em uma ArvoreAVLParticionada (a thread t
+   * insere t, t + threads, t + 2 threads, ..., em ordem crescente, o que força rebalanceamentos)
+   * e, entre elas, chaves sorteadas já cobertas por outra thread, que a política REJECT descarta.
+   * Confere que size() e positionsCentral() são exatamente 0..total-1 e mede a vazão com
+   * 1, 2, 4 e 8 threads. Com menos núcleos que threads a vazão não tem como crescer.
+   */
+  private static void medeParticionada(int total, int particoes) {
+    StringBuilder esperado = new StringBuilder();
+    for (int i = 0; i < total; i++) {
+      esperado.append(i).append('\n');
+    }
+    String centralEsperado = esperado.toString();
+    System.out.println("ArvoreAVLParticionada: " + total + " chaves em " + particoes + " particoes, "
+        + Runtime.getRuntime().availableProcessors() + " nucleos");
+    for (int threads = 1; threads <= 8; threads *= 2) {
+      ArvoreAVLParticionada arvore = new ArvoreAVLParticionada(particoes, ArvoreAVL.DuplicatePolicy.REJECT);
+      int numThreads = threads;
+      int porThread = total / threads;
+      Thread[] produtoras = new Thread[threads];
+      long inicio = System.nanoTime();
+      for (int t = 0; t < threads; t++) {
+        int id = t;
+        produtoras[t] = new Thread(() -> {
+          Random r = new Random(id);
+          for (int i = 0; i < porThread; i++) {
+            arvore.add(i * numThreads + id);
+            if (i % 4 == 0) {
+              arvore.add(r.nextInt(total)); // repetida: outra thread insere (ou já inseriu) esta chave
+            }
+          }
+        });
+        produtoras[t].start();
+      }
+      try {
+        for (Thread t : produtoras) {
+          t.join();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Ingestao interrompida", e);
+      }
+      long ns = System.nanoTime() - inicio;
+      if (arvore.size() != total || !arvore.positionsCentral().toString().equals(centralEsperado)) {
+        throw new IllegalStateException("ArvoreAVLParticionada divergente com " + threads + " threads: size " + arvore.size());
+      }
+      int lo = total / 3;
+      int hi = lo + 1000;
+      String faixa = centralEsperado.substring(centralEsperado.indexOf("\n" + lo + "\n") + 1,
+          centralEsperado.indexOf("\n" + (hi + 1) + "\n") + 1);
+      if (!arvore.positionsCentral(lo, hi).toString().equals(faixa)) {
+        throw new IllegalStateException("ArvoreAVLParticionada divergente em [" + lo + ", " + hi + "] com " + threads + " threads");
+      }
+      long adds = (long) total + (porThread + 3) / 4 * threads;
+      System.out.println("ArvoreAVLParticionada: " + threads + " threads, " + adds + " adds em " + ns / 1000000 + " ms ("
+          + adds * 1000000 / ns + " adds/ms), " + arvore.getRebalanceamentos() + " rebalanceamentos");
+    }
   }
 }
@@ -0,0 +1,262 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Classe que recebe elementos de várias threads produtoras (inclusive virtual threads) e os
+ * insere em uma ArvoreAVL por meio de uma única thread escritora.
+ * Os produtores só copiam o elemento para um buffer limitado; a escritora troca o buffer
+ * cheio por um vazio, ordena o lote e o insere na árvore com ArvoreAVL.addAllSorted, que
+ * intercala um lote grande com os nodos existentes e reconstrói a árvore de uma vez.
+ * Quando o buffer está cheio, add() espera (contrapressão).
+ *
+ * A árvore só deve ser lida depois que o futuro de flush() ou close() completar, pois ela
+ * continua não sendo segura para acesso concorrente.
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class PipelineIngestao {
+    /**
+     * Classe que guarda um pedido de flush até a escritora alcançar a sequência pedida.
+     */
+    private static final class Pendente {
+
+        public final long sequencia; //elementos que precisam estar na árvore
+        public final CompletableFuture<Void> futuro;
+
+        public Pendente(long sequencia) {
+            this.sequencia = sequencia;
+            futuro = new CompletableFuture<>();
+        }
+    }
+
+    // Atributos do pipeline
+    private final ArvoreAVL arvore;
+    private final ReentrantLock trava; //ReentrantLock em vez de synchronized, para não prender virtual threads
+    private final Condition naoCheio;
+    private final Condition naoVazio;
+    private final Queue<Pendente> pendentes; //pedidos de flush, em ordem crescente de sequência
+    private final CompletableFuture<Void> termino; //completa quando a escritora termina
+    private final Thread escritora;
+    private int[] buffer; //elementos recebidos e ainda não entregues à escritora
+    private int[] lote; //buffer reserva, usado pela escritora
+    private int tamanho; //posições ocupadas de buffer
+    private long recebidos; //elementos aceitos desde a criação
+    private long aplicados; //elementos já inseridos na árvore
+    private long lotes; //lotes inseridos
+    private int maiorLote; //tamanho do maior lote inserido
+    private boolean fechado;
+    private Throwable falha; //erro da escritora, se houver
+
+    /**
+     * Método construtor da classe PipelineIngestao. Inicia a thread escritora.
+     * @param arvore Árvore que recebe os elementos. Não deve ser alterada por fora enquanto o pipeline estiver aberto.
+     * @param capacidade Número máximo de elementos aguardando inserção.
+     */
+    public PipelineIngestao(ArvoreAVL arvore, int capacidade) {
+        if (arvore == null) {
+            throw new IllegalArgumentException("Arvore nula");
+        }
+        if (capacidade <= 0) {
+            throw new IllegalArgumentException("Capacidade invalida: " + capacidade);
+        }
+        this.arvore = arvore;
+        trava = new ReentrantLock();
+        naoCheio = trava.newCondition();
+        naoVazio = trava.newCondition();
+        pendentes = new Queue<>();
+        termino = new CompletableFuture<>();
+        buffer = new int[capacidade];
+        lote = new int[capacidade];
+        escritora = new Thread(this::executaEscritora, "PipelineIngestao-escritora");
+        escritora.setDaemon(true);
+        escritora.start();
+    }
+
+    /**
+     * Método que entrega um elemento ao pipeline, esperando se o buffer estiver cheio.
+     * @param element Elemento a ser adicionado.
+     * @throws InterruptedException Se a thread for interrompida enquanto espera.
+     */
+    public void add(int element) throws InterruptedException {
+        trava.lock();
+        try {
+            while (tamanho == buffer.length && !fechado && falha == null) {
+                naoCheio.await();
+            }
+            aceita(element);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Método que entrega um elemento ao pipeline sem esperar.
+     * @param element Elemento a ser adicionado.
+     * @return Boolean "true" se o elemento foi aceito, "false" se o buffer estava cheio.
+     */
+    public boolean offer(int element) {
+        trava.lock();
+        try {
+            if (tamanho == buffer.length && !fechado && falha == null) {
+                return false;
+            }
+            aceita(element);
+            return true;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Método que guarda o elemento no buffer. Deve ser chamado com a trava.
+     */
+    private void aceita(int element) {
+        verificaAberto();
+        buffer[tamanho++] = element;
+        recebidos++;
+        if (tamanho == 1) {
+            naoVazio.signal();
+        }
+    }
+
+    private void verificaAberto() {
+        if (falha != null) {
+            throw new IllegalStateException("A escritora falhou", falha);
+        }
+        if (fechado) {
+            throw new IllegalStateException("Pipeline fechado");
+        }
+    }
+
+    /**
+     * Método que retorna um futuro que completa quando todos os elementos aceitos até agora
+     * estiverem na árvore.
+     * @return Futuro do flush.
+     */
+    public CompletableFuture<Void> flush() {
+        trava.lock();
+        try {
+            if (falha != null) {
+                return CompletableFuture.failedFuture(falha);
+            }
+            if (aplicados == recebidos) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Pendente p = new Pendente(recebidos);
+            pendentes.enqueue(p);
+            return p.futuro;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Método que para de aceitar elementos. A escritora insere o que já foi aceito e termina.
+     * @return Futuro que completa quando a escritora terminar.
+     */
+    public CompletableFuture<Void> close() {
+        trava.lock();
+        try {
+            fechado = true;
+            naoVazio.signal();
+            naoCheio.signalAll();
+        } finally {
+            trava.unlock();
+        }
+        return termino;
+    }
+
+    /**
+     * Método que retorna a árvore alimentada pelo pipeline.
+     * @return Árvore.
+     */
+    public ArvoreAVL getArvore() {
+        return arvore;
+    }
+
+    /**
+     * Método que retorna o número de lotes inseridos na árvore.
+     * @return Número de lotes.
+     */
+    public long getLotes() {
+        trava.lock();
+        try {
+            return lotes;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Método que retorna o tamanho do maior lote inserido na árvore.
+     * @return Tamanho do maior lote.
+     */
+    public int getMaiorLote() {
+        trava.lock();
+        try {
+            return maiorLote;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Laço da thread escritora: pega o buffer cheio, ordena e insere na árvore.
+     */
+    private void executaEscritora() {
+        try {
+            while (true) {
+                int n;
+                trava.lock();
+                try {
+                    while (tamanho == 0 && !fechado) {
+                        naoVazio.await();
+                    }
+                    if (tamanho == 0) {
+                        break; // fechado e sem elementos restantes
+                    }
+                    int[] aux = lote;
+                    lote = buffer;
+                    buffer = aux;
+                    n = tamanho;
+                    tamanho = 0;
+                    naoCheio.signalAll();
+                } finally {
+                    trava.unlock();
+                }
+
+                // fora da trava: os produtores continuam enchendo o outro buffer
+                Arrays.sort(lote, 0, n);
+                arvore.addAllSorted(lote, n);
+
+                trava.lock();
+                try {
+                    aplicados += n;
+                    lotes++;
+                    maiorLote = Math.max(maiorLote, n);
+                    while (!pendentes.isEmpty() && pendentes.head().sequencia <= aplicados) {
+                        pendentes.dequeue().futuro.complete(null);
+                    }
+                } finally {
+                    trava.unlock();
+                }
+            }
+            termino.complete(null);
+        } catch (Throwable t) {
+            trava.lock();
+            try {
+                falha = t;
+                while (!pendentes.isEmpty()) {
+                    pendentes.dequeue().futuro.completeExceptionally(t);
+                }
+                naoCheio.signalAll();
+            } finally {
+                trava.unlock();
+            }
+            termino.completeExceptionally(t);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Teste diferencial da ArvoreAVL: compara a árvore com um TreeMap (elemento -> ocorrências) em
+ * sequências de operações sorteadas, em todas as combinações de políticas. Tem o seu próprio
+ * main para rodar sozinho (por exemplo a cada alteração, na integração contínua), sem os
+ * benchmarks e os testes com arquivos de Main.
+ *
+ * Uso: java TesteDiferencial [operacoes] [semente]
+ *
+ * @author Yasmin Cardozo Aguirre - 23111329
+ */
+
+public class TesteDiferencial {
+
+  public static void main(String[] args) {
+    int operacoes = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    long semente = (args.length > 1) ? Long.parseLong(args[1]) : 20241019L;
+    testeDiferencial(operacoes, semente);
+  }
+
+  // Códigos das operações do teste diferencial
+  private static final int OP_ADD = 0;
+  private static final int OP_CONTAINS = 1;
+  private static final int OP_COUNT = 2;
+  private static final int OP_SMALLEST = 3;
+  private static final int OP_RANGE = 4;
+  private static final int OP_FREEZE = 5;
+  private static final int OP_REBALANCE = 6;
+  private static final int OP_CLEAR = 7;
+  private static final int OP_LARGEST = 8;
+  private static final int OP_WIDTH = 9;
+  // Orçamento de memória das combinações que exercitam o despejo em disco: cerca de 256 nodos
+  private static final long ORCAMENTO = 64 * 256;
+
+  /**
+   * Executa o teste diferencial em todas as combinações de políticas, dividindo as operações entre elas,
+   * com chaves em faixas pequenas para haver muitos repetidos. Depois roda cada política de
+   * balanceamento com chaves em uma faixa larga (Integer fora da cache, árvores de dezenas de
+   * milhares de nodos), sem clear e validando periodicamente. As sequências misturam operações
+   * sorteadas com rajadas de inserções em ordem crescente, decrescente ou da mesma chave, que
+   * levam as políticas sem rotações ao pior caso de profundidade.
+   * Se encontrar uma falha, reduz a sequência de operações até um caso mínimo e o imprime.
+   */
+  static void testeDiferencial(int operacoes, long semente) {
+    Random r = new Random(semente);
+    int porCombinacao = operacoes / (ArvoreAVL.DuplicatePolicy.values().length * ArvoreAVL.BalancePolicy.values().length);
+    long inicio = System.nanoTime();
+    for (ArvoreAVL.DuplicatePolicy dp : ArvoreAVL.DuplicatePolicy.values()) {
+      for (ArvoreAVL.BalancePolicy bp : ArvoreAVL.BalancePolicy.values()) {
+        int faixa = 16 << r.nextInt(7); // chaves em [0, 16..1024), para haver repetidos
+        verifica(dp, bp, geraOperacoes(r, porCombinacao, faixa, faixa / 4, faixa, false), 1);
+      }
+    }
+    int porPolitica = operacoes / 10;
+    for (ArvoreAVL.BalancePolicy bp : ArvoreAVL.BalancePolicy.values()) {
+      verifica(ArvoreAVL.DuplicatePolicy.ALLOW, bp, geraOperacoes(r, porPolitica, 1 << 30, 1 << 14, 1 << 15, true), 4096);
+    }
+    System.out.println("Teste diferencial: " + (operacoes + 3 * porPolitica) + " operacoes sem divergencias em "
+        + (System.nanoTime() - inicio) / 1000000 + " ms");
+  }
+
+  /**
+   * Sorteia uma sequência de operações. Começa com uma rajada crescente de "rajadaMaxima"
+   * inserções e, entre as operações sorteadas, intercala rajadas em ordem crescente, decrescente
+   * ou da mesma chave (cerca de um quinto das operações).
+   * @param faixa Número de chaves possíveis.
+   * @param extensaoMaxima Maior extensão das consultas de faixa.
+   * @param rajadaMaxima Maior número de inserções de uma rajada.
+   * @param arvoreGrande Se true, não sorteia clear, para a árvore crescer durante toda a sequência,
+   *                     nem positionsWidth, cuja conferência é O(n log(n)).
+   */
+  private static List<int[]> geraOperacoes(Random r, int n, int faixa, int extensaoMaxima, int rajadaMaxima, boolean arvoreGrande) {
+    List<int[]> ops = new ArrayList<>();
+    while (ops.size() < n) {
+      if (ops.isEmpty() || r.nextInt(2 * rajadaMaxima) == 0) {
+        int tipo = ops.isEmpty() ? 0 : r.nextInt(3); // crescente, decrescente ou mesma chave
+        int chave = r.nextInt(faixa) - faixa / 8;
+        int comprimento = ops.isEmpty() ? rajadaMaxima : 1 + r.nextInt(rajadaMaxima);
+        for (int j = 0; j < comprimento && ops.size() < n; j++) {
+          ops.add(new int[] {OP_ADD, chave + (tipo == 0 ? j : tipo == 1 ? -j : 0), 0});
+        }
+        continue;
+      }
+      int sorteio = r.nextInt(1000);
+      int op;
+      if (sorteio < 500) op = OP_ADD;
+      else if (sorteio < 750) op = OP_CONTAINS;
+      else if (sorteio < 850) op = OP_COUNT;
+      else if (sorteio < 880) op = OP_SMALLEST;
+      else if (sorteio < 910) op = OP_LARGEST;
+      else if (sorteio < 989) op = OP_RANGE;
+      else if (sorteio < 990) op = arvoreGrande ? OP_RANGE : OP_WIDTH;
+      else if (sorteio < 995) op = OP_FREEZE;
+      else if (sorteio < 999 || arvoreGrande) op = OP_REBALANCE;
+      else op = OP_CLEAR;
+      ops.add(new int[] {op, r.nextInt(faixa) - faixa / 8, r.nextInt(extensaoMaxima + 1)});
+    }
+    return ops;
+  }
+
+  /**
+   * Executa as operações e, se houver divergência, imprime o caso mínimo e falha.
+   */
+  private static void verifica(ArvoreAVL.DuplicatePolicy dp, ArvoreAVL.BalancePolicy bp, List<int[]> ops, int validacao) {
+    String falha = executa(dp, bp, ops, validacao);
+    if (falha != null) {
+      List<int[]> minimo = reduz(dp, bp, ops, validacao);
+      System.out.println("FALHA [" + dp + ", " + bp + "]: " + executa(dp, bp, minimo, validacao));
+      for (int[] op : minimo) {
+        System.out.println("  op=" + op[0] + " chave=" + op[1] + " extensao=" + op[2]);
+      }
+      throw new IllegalStateException("Teste diferencial falhou: " + falha);
+    }
+  }
+
+  /**
+   * Aplica as operações na árvore e no modelo. Um quarto das combinações de políticas roda com
+   * um orçamento de memória de cerca de 256 nodos, para exercitar o despejo em disco, e outro quarto
+   * com a cache de contains ligada.
+   * @param validacao Passos entre duas chamadas de validate() e distinctSize().
+   * @return Descrição da primeira divergência, ou null se não houver.
+   */
+  private static String executa(ArvoreAVL.DuplicatePolicy dp, ArvoreAVL.BalancePolicy bp, List<int[]> ops, int validacao) {
+    ArvoreAVL arvore = new ArvoreAVL(dp);
+    arvore.setBalancePolicy(bp);
+    boolean comOrcamento = (dp.ordinal() + bp.ordinal()) % 4 == 1;
+    if ((dp.ordinal() + bp.ordinal()) % 4 == 2) {
+      arvore.enableLookupCache(64);
+    }
+    try {
+      if (comOrcamento) {
+        arvore.setHeapBudget(ORCAMENTO, Files.createTempFile("arvoreavl", ".despejo"));
+        validacao = Math.max(validacao, 64);
+      }
+      return executa(dp, arvore, comOrcamento, ops, validacao);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      try {
+        arvore.disableHeapBudget();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Aplica as operações na árvore e no modelo, validando as invariantes a cada "validacao" passos
+   * e depois do último.
+   * @return Descrição da primeira divergência, ou null se não houver.
+   */
+  private static String executa(ArvoreAVL.DuplicatePolicy dp, ArvoreAVL arvore, boolean comOrcamento, List<int[]> ops,
+      int validacao) {
+    TreeMap<Integer, Integer> modelo = new TreeMap<>();
+    int tamanho = 0;
+    for (int i = 0; i < ops.size(); i++) {
+      int op = ops.get(i)[0];
+      int chave = ops.get(i)[1];
+      int extensao = ops.get(i)[2];
+      try {
+        switch (op) {
+          case OP_ADD:
+            arvore.add(chave);
+            if (dp == ArvoreAVL.DuplicatePolicy.ALLOW || dp == ArvoreAVL.DuplicatePolicy.MULTISET) {
+              modelo.merge(chave, 1, Integer::sum);
+              tamanho++;
+            } else if (modelo.putIfAbsent(chave, 1) == null) {
+              tamanho++;
+            }
+            break;
+          case OP_CONTAINS:
+            if (arvore.contains(chave) != modelo.containsKey(chave))
+              return "passo " + i + ": contains(" + chave + ") = " + arvore.contains(chave);
+            break;
+          case OP_COUNT:
+            int esperado = modelo.getOrDefault(chave, 0);
+            if (arvore.count(chave) != esperado)
+              return "passo " + i + ": count(" + chave + ") = " + arvore.count(chave) + ", esperado " + esperado;
+            break;
+          case OP_SMALLEST:
+            Integer menor = modelo.isEmpty() ? null : modelo.firstKey();
+            if (arvore.getSmallest() == null ? menor != null : !arvore.getSmallest().equals(menor))
+              return "passo " + i + ": getSmallest() = " + arvore.getSmallest() + ", esperado " + menor;
+            break;
+          case OP_LARGEST:
+            Integer maior = modelo.isEmpty() ? null : modelo.lastKey();
+            if (arvore.getLargest() == null ? maior != null : !arvore.getLargest().equals(maior))
+              return "passo " + i + ": getLargest() = " + arvore.getLargest() + ", esperado " + maior;
+            break;
+          case OP_WIDTH:
+            // a ordem por largura depende da forma da árvore: confere que começa pela raiz e
+            // que, ordenados, os elementos são os do modelo
+            String largura = arvore.positionsWidth().toString();
+            int[] elementos = largura.isEmpty() ? new int[0] : Arrays.stream(largura.split("\n")).mapToInt(Integer::parseInt).toArray();
+            if (elementos.length > 0 && elementos[0] != arvore.getRoot().element)
+              return "passo " + i + ": positionsWidth() comeca por " + elementos[0] + " e nao pela raiz";
+            Arrays.sort(elementos);
+            int k = 0;
+            for (Map.Entry<Integer, Integer> e : modelo.entrySet()) {
+              int vezes = (dp == ArvoreAVL.DuplicatePolicy.ALLOW) ? e.getValue() : 1;
+              for (int j = 0; j < vezes; j++) {
+                if (k == elementos.length || elementos[k++] != e.getKey())
+                  return "passo " + i + ": positionsWidth() diverge do modelo em " + e.getKey();
+              }
+            }
+            if (k != elementos.length)
+              return "passo " + i + ": positionsWidth() tem " + elementos.length + " elementos, esperado " + k;
+            break;
+          case OP_RANGE:
+            if (!arvore.positionsCentral(chave, chave + extensao).toString()
+                .equals(faixa(modelo, chave, chave + extensao, dp == ArvoreAVL.DuplicatePolicy.ALLOW)))
+              return "passo " + i + ": positionsCentral(" + chave + ", " + (chave + extensao) + ") diverge do modelo";
+            break;
+          case OP_FREEZE:
+            ArvoreCongelada congelada = arvore.freeze();
+            for (int j = chave - extensao; j <= chave + extensao; j++) {
+              if (congelada.contains(j) != modelo.containsKey(j))
+                return "passo " + i + ": freeze().contains(" + j + ") = " + congelada.contains(j);
+            }
+            // thaw() devolve um nodo por nodo congelado: os repetidos da política ALLOW, sem as ocorrências da MULTISET
+            boolean repetidos = (dp == ArvoreAVL.DuplicatePolicy.ALLOW);
+            ArvoreAVL descongelada = congelada.thaw();
+            descongelada.validate();
+            if (descongelada.size() != (repetidos ? tamanho : modelo.size())
+                || !descongelada.positionsCentral(chave, chave + extensao).toString().equals(faixa(modelo, chave, chave + extensao, repetidos)))
+              return "passo " + i + ": freeze().thaw() diverge do modelo";
+            break;
+          case OP_REBALANCE:
+            arvore.rebalance();
+            break;
+          case OP_CLEAR:
+            arvore.clear();
+            modelo.clear();
+            tamanho = 0;
+            break;
+        }
+        if (arvore.size() != tamanho)
+          return "passo " + i + ": size() = " + arvore.size() + ", esperado " + tamanho;
+        // distinctSize() e validate() são O(n) e, com orçamento, leem todas as páginas despejadas
+        if (i % validacao == 0 || i == ops.size() - 1) {
+          if (arvore.distinctSize() != modelo.size())
+            return "passo " + i + ": distinctSize() = " + arvore.distinctSize() + ", esperado " + modelo.size();
+          arvore.validate();
+        }
+        if (comOrcamento && arvore.memoryFootprint() > ORCAMENTO)
+          return "passo " + i + ": memoryFootprint() = " + arvore.memoryFootprint() + ", orcamento de " + ORCAMENTO;
+      } catch (RuntimeException e) {
+        return "passo " + i + ": " + e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Monta a saída esperada de positionsCentral(lo, hi) a partir do modelo.
+   * @param repetidos Se true, cada elemento aparece tantas vezes quanto foi inserido (política ALLOW).
+   */
+  private static String faixa(TreeMap<Integer, Integer> modelo, int lo, int hi, boolean repetidos) {
+    StringBuilder res = new StringBuilder();
+    for (Map.Entry<Integer, Integer> e : modelo.subMap(lo, true, hi, true).entrySet()) {
+      int vezes = repetidos ? e.getValue() : 1;
+      for (int j = 0; j < vezes; j++) {
+        res.append(e.getKey()).append("\n");
+      }
+    }
+    return res.toString();
+  }
+
+  /**
+   * Remove blocos de operações enquanto a falha continuar acontecendo, até não conseguir reduzir mais.
+   * @return Sequência mínima (localmente) que ainda falha.
+   */
+  private static List<int[]> reduz(ArvoreAVL.DuplicatePolicy dp, ArvoreAVL.BalancePolicy bp, List<int[]> ops, int validacao) {
+    List<int[]> atual = new ArrayList<>(ops);
+    for (int bloco = atual.size() / 2; bloco >= 1; bloco /= 2) {
+      int i = 0;
+      while (i < atual.size()) {
+        List<int[]> tentativa = new ArrayList<>(atual.subList(0, i));
+        tentativa.addAll(atual.subList(Math.min(i + bloco, atual.size()), atual.size()));
+        if (executa(dp, bp, tentativa, validacao) != null) {
+          atual = tentativa;
+        } else {
+          i += bloco;
+        }
+      }
+    }
+    return atual;
+  }
+}